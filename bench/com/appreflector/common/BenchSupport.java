@@ -0,0 +1,83 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.appreflector.common;
+
+import java.io.IOException;
+
+/**
+ * Shared set up for the benchmarks.
+ *
+ * @author ML
+ */
+final class BenchSupport {
+
+    /**
+     * The name of the callbacks object in the fake host context.
+     */
+    static final String CALLBACKS = "callbacks";
+
+    private BenchSupport() {
+    }
+
+    /**
+     * Starts the JavaFX toolkit, headless if Monocle is on the class path.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    static void startFX() throws InterruptedException {
+        HeadlessLauncher.startToolkit();
+    }
+
+    /**
+     * Creates an app with the scene graph described by short-form FXML, a
+     * {@code FakeJSObject} host context and a default controller that has
+     * not been initialised.
+     *
+     * @param fxml the FXML
+     * @return the app
+     * @throws IOException if the FXML can not be loaded
+     */
+    static FXWebApp app(String fxml) throws IOException {
+        FXWebApp app = new FXWebApp();
+        app.setHostContext(FakeJSObject.hostContext(CALLBACKS));
+        app.setFxml(FXWebApp.withDefaultHeader(fxml));
+        app.setCallbacks(CALLBACKS);
+        app.setController(new FXWebAppController());
+        app.setRoot(FXWebApp.loadRoot(app.getFxml(), null));
+        return app;
+    }
+}
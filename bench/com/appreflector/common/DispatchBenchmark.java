@@ -0,0 +1,109 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.appreflector.common;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javafx.application.Platform;
+import javafx.scene.control.Button;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of callbacks from button events to a stub host, for each
+ * dispatch policy, with and without batching. Each invocation fires a burst
+ * of events on the Platform thread and waits until every callback has been
+ * delivered.
+ *
+ * @author ML
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DispatchBenchmark {
+
+    private static final int BURST = 1000;
+
+    @Param({"DEFERRED", "DIRECT"})
+    public String policy;
+
+    @Param({"false", "true"})
+    public boolean batched;
+
+    private Button[] buttons;
+
+    @Setup
+    public void setup() throws InterruptedException, IOException {
+        BenchSupport.startFX();
+        FXWebApp app = BenchSupport.app(new SyntheticFxml(100, 2, 1, "Button", 42).generate());
+        app.getController().initialize(app, BenchSupport.CALLBACKS);
+        app.setDispatchPolicy(policy);
+        app.getBatchDispatcher().setEnabled(batched);
+        FXScheduler.getDefault().getLane(FXScheduler.Priority.INPUT).setCapacity(BURST * 2);
+        buttons = app.lookupAll("Button").stream().toArray(Button[]::new);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void fire() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        Platform.runLater(() -> {
+            for (int i = 0; i < BURST; i++) {
+                buttons[i % buttons.length].fire();
+            }
+            // Queue behind the deferred and batched callbacks
+            FXScheduler.getDefault().post(FXScheduler.Priority.INPUT, () -> {
+                Platform.runLater(done::countDown);
+            });
+        });
+        done.await();
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.appreflector.common;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javafx.application.Platform;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+import javax.management.ObjectName;
+
+/**
+ * Checks that {@code FXWebApp.dispose} frees what an app retains: retained
+ * heap returns to its baseline after many create/dispose cycles.
+ *
+ * <p>
+ * Each cycle launches an app headless against a {@code FakeJSObject} host
+ * context, wires it, creates a window, fires every button and disposes the
+ * app on the Platform thread while the callbacks are still queued. The
+ * check fails if any disposed app is still reachable, any metrics MXBean is
+ * still registered, any exception reaches the Platform thread, or retained
+ * heap grows by more than the tolerance.
+ * </p>
+ * <p>
+ * Run with: {@code java DisposeHeapCheck [cycles] [nodes] [toleranceMB] [mix]},
+ * defaulting to 200 cycles of 500 nodes of the default mix of controls, and
+ * 4MB. Exits with status 1 on failure.
+ * </p>
+ *
+ * @author ML
+ */
+public final class DisposeHeapCheck {
+
+    private static final AtomicInteger ERRORS = new AtomicInteger();
+
+    private DisposeHeapCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int cycles = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int nodes = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        long tolerance = (args.length > 2 ? Long.parseLong(args[2]) : 4) << 20;
+        String mix = args.length > 3 ? args[3] : SyntheticFxml.DEFAULT_MIX;
+
+        Thread.setDefaultUncaughtExceptionHandler((Thread thread, Throwable ex) -> {
+            ERRORS.incrementAndGet();
+            System.err.println(thread.getName() + ": " + ex);
+        });
+        HeadlessLauncher.startToolkit();
+        String fxml = new SyntheticFxml(nodes, 4, 1, mix, 42).generate();
+
+        // Warm up caches, classes and the JIT before taking the baseline
+        for (int i = 0; i < Math.max(1, cycles / 10); i++) {
+            cycle(fxml);
+        }
+        long baseline = retainedHeap();
+
+        List<WeakReference<FXWebApp>> apps = new ArrayList<>();
+        for (int i = 0; i < cycles; i++) {
+            apps.add(new WeakReference<>(cycle(fxml)));
+        }
+        releaseLastWindow();
+        long retained = retainedHeap();
+
+        int live = 0;
+        for (WeakReference<FXWebApp> app : apps) {
+            if (app.get() != null) {
+                live++;
+            }
+        }
+        int beans = ManagementFactory.getPlatformMBeanServer().queryNames(
+                new ObjectName("com.appreflector.common:type=FXWebApp,*"), null).size();
+        long growth = retained - baseline;
+
+        System.out.printf("%d cycles of %d nodes: baseline %dKB, after %dKB, growth %dKB%n",
+                cycles, nodes, baseline >> 10, retained >> 10, growth >> 10);
+        System.out.printf("apps still reachable %d, MXBeans registered %d, errors %d%n",
+                live, beans, ERRORS.get());
+        boolean passed = live == 0 && beans == 0 && ERRORS.get() == 0 && growth <= tolerance;
+        System.out.println(passed ? "PASSED" : "FAILED");
+        Platform.exit();
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Launches, drives and disposes one app.
+     *
+     * @param fxml the FXML
+     * @return the disposed app
+     * @throws Exception if the app can not be launched
+     */
+    private static FXWebApp cycle(String fxml) throws Exception {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("fxml", fxml);
+        parameters.put("data", "{}");
+        parameters.put("callbacks", BenchSupport.CALLBACKS);
+        FXWebApp app = HeadlessLauncher.launch(parameters, FakeJSObject.hostContext(BenchSupport.CALLBACKS));
+
+        CountDownLatch disposed = new CountDownLatch(1);
+        Platform.runLater(() -> {
+            app.createWindow("<VBox><Button id=\"ok\"/></VBox>", "{}", BenchSupport.CALLBACKS);
+            for (Node node : app.lookupAll("Button")) {
+                ((Button) node).fire();
+            }
+            // Dispose with the callbacks and the window start still queued
+            app.dispose();
+            app.getRoot().getScene().getWindow().hide();
+            disposed.countDown();
+        });
+        await(disposed);
+
+        // Wait behind everything queued by the cycle
+        CountDownLatch drained = new CountDownLatch(1);
+        FXScheduler.getDefault().post(FXScheduler.Priority.BACKGROUND, () -> {
+            Platform.runLater(drained::countDown);
+        });
+        await(drained);
+        return app;
+    }
+
+    /**
+     * The toolkit keeps a reference to the last window shown until another
+     * is shown, so shows and hides an unrelated one to let the last app go.
+     */
+    private static void releaseLastWindow() throws InterruptedException {
+        CountDownLatch shown = new CountDownLatch(1);
+        Platform.runLater(() -> {
+            Stage stage = new Stage();
+            stage.setScene(new Scene(new VBox()));
+            stage.show();
+            stage.hide();
+            shown.countDown();
+        });
+        await(shown);
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        if (!latch.await(30, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Timed out waiting for the Platform thread");
+        }
+    }
+
+    /**
+     * @return the least heap used over several collections
+     */
+    private static long retainedHeap() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long least = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(100);
+            least = Math.min(least, memory.getHeapMemoryUsage().getUsed());
+        }
+        return least;
+    }
+}
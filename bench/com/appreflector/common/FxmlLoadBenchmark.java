@@ -0,0 +1,108 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.appreflector.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import javafx.fxml.FXMLLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading FXML: with an {@code FXMLLoader}, as {@code FXWebApp.start} did,
+ * compiling a template, and replaying a cached template.
+ *
+ * @author ML
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FxmlLoadBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int nodes;
+
+    @Param({"4"})
+    public int depth;
+
+    @Param({"0.5"})
+    public double idDensity;
+
+    @Param({SyntheticFxml.DEFAULT_MIX})
+    public String mix;
+
+    private String fxml;
+    private String hash;
+
+    @Setup
+    public void setup() throws InterruptedException {
+        BenchSupport.startFX();
+        fxml = FXWebApp.withDefaultHeader(new SyntheticFxml(nodes, depth, idDensity, mix, 42).generate());
+        hash = FXMLTemplateCache.hash(FXMLTemplateCache.normalize(fxml));
+    }
+
+    @Benchmark
+    public Object fxmlLoader() throws IOException {
+        FXMLLoader loader = new FXMLLoader();
+        loader.setController(new FXWebAppController());
+        return loader.load(new ByteArrayInputStream(fxml.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public Object compileTemplate() {
+        return FXMLTemplate.compile(fxml, hash);
+    }
+
+    @Benchmark
+    public Object loadRoot() throws IOException {
+        return FXWebApp.loadRoot(fxml, null);
+    }
+}
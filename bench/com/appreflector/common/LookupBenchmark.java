@@ -0,0 +1,128 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.appreflector.common;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code FXWebApp.lookup} and {@code lookupAll}, compared with the
+ * {@code Node} methods they replace, and building the node index.
+ *
+ * @author ML
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LookupBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int nodes;
+
+    @Param({"4"})
+    public int depth;
+
+    @Param({"0.5"})
+    public double idDensity;
+
+    @Param({SyntheticFxml.DEFAULT_MIX})
+    public String mix;
+
+    private FXWebApp app;
+    private String[] selectors;
+    private int next;
+
+    @Setup
+    public void setup() throws InterruptedException, IOException {
+        BenchSupport.startFX();
+        SyntheticFxml generator = new SyntheticFxml(nodes, depth, idDensity, mix, 42);
+        app = BenchSupport.app(generator.generate());
+        List<String> ids = generator.getIds();
+        selectors = ids.isEmpty() ? new String[]{"#none"} : new String[ids.size()];
+        for (int i = 0; i < ids.size(); i++) {
+            selectors[i] = "#" + ids.get(i);
+        }
+        app.getNodeIndex();
+    }
+
+    private String nextSelector() {
+        next = next + 1 == selectors.length ? 0 : next + 1;
+        return selectors[next];
+    }
+
+    @Benchmark
+    public Object lookupById() {
+        return app.lookup(nextSelector());
+    }
+
+    @Benchmark
+    public Object lookupByIdFromRoot() {
+        return app.getRoot().lookup(nextSelector());
+    }
+
+    @Benchmark
+    public Object lookupAllByType() {
+        return app.lookupAll("VBox > Button");
+    }
+
+    @Benchmark
+    public Object lookupAllByTypeFromRoot() {
+        return app.getRoot().lookupAll("VBox > Button");
+    }
+
+    @Benchmark
+    public Object buildIndex() {
+        NodeIndex index = new NodeIndex(app.getRoot());
+        index.dispose();
+        return index;
+    }
+}
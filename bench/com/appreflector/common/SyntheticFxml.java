@@ -0,0 +1,181 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.appreflector.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates short-form FXML for benchmarks, with a given number of nodes,
+ * nesting depth, proportion of nodes with ids and mix of controls.
+ *
+ * <p>
+ * The scene is a tree of alternating {@code VBox} and {@code HBox}
+ * containers with controls as leaves. The fan-out of the containers is the
+ * smallest that reaches the node count within the depth. Generation is
+ * deterministic for a given seed.
+ * </p>
+ *
+ * @author ML
+ */
+public final class SyntheticFxml {
+
+    /**
+     * The default control mix.
+     */
+    public static final String DEFAULT_MIX = "Button:4,Label:4,TextField:2,CheckBox:2,Slider:1,ComboBox:1";
+
+    private final int nodes;
+    private final int depth;
+    private final double idDensity;
+    private final List<String> mix = new ArrayList<>();
+    private final List<String> ids = new ArrayList<>();
+    private final Random random;
+    private int fanout;
+    private int emitted;
+
+    /**
+     * @param nodes the number of nodes, including containers
+     * @param depth the maximum depth of the tree - at least 1
+     * @param idDensity the proportion of nodes given an id, from 0 to 1
+     * @param mix the control types and their relative weights, e.g.
+     * "Button:4,Label:1" - see {@code DEFAULT_MIX}
+     * @param seed the seed for the random choices
+     */
+    public SyntheticFxml(int nodes, int depth, double idDensity, String mix, long seed) {
+        this.nodes = Math.max(1, nodes);
+        this.depth = Math.max(1, depth);
+        this.idDensity = idDensity;
+        this.random = new Random(seed);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            int weight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+            for (int i = 0; i < weight; i++) {
+                this.mix.add(parts[0].trim());
+            }
+        }
+    }
+
+    /**
+     * Generates the FXML. May be called once.
+     *
+     * @return short-form FXML, without a header
+     */
+    public String generate() {
+        fanout = Math.max(2, (int) Math.ceil(Math.pow(nodes, 1.0 / depth)));
+        StringBuilder sb = new StringBuilder(nodes * 48);
+        container(sb, 0);
+        return sb.toString();
+    }
+
+    /**
+     * @return the ids given to nodes, in document order
+     */
+    public List<String> getIds() {
+        return Collections.unmodifiableList(ids);
+    }
+
+    private void container(StringBuilder sb, int level) {
+        String tag = level % 2 == 0 ? "VBox" : "HBox";
+        sb.append('<').append(tag).append(id("box"));
+        if (level == 0) {
+            sb.append(" xmlns:fx=\"http://javafx.com/fxml/1\"");
+        }
+        sb.append(">\n<children>\n");
+        emitted++;
+        for (int i = 0; i < fanout && emitted < nodes; i++) {
+            if (level + 1 < depth) {
+                container(sb, level + 1);
+            } else {
+                leaf(sb);
+            }
+        }
+        sb.append("</children>\n</").append(tag).append(">\n");
+    }
+
+    private void leaf(StringBuilder sb) {
+        String type = mix.get(random.nextInt(mix.size()));
+        emitted++;
+        sb.append('<').append(type).append(id(type.toLowerCase()));
+        switch (type) {
+            case "Button":
+            case "Label":
+            case "CheckBox":
+            case "ToggleButton":
+            case "RadioButton":
+            case "Hyperlink":
+                sb.append(" text=\"").append(type).append(' ').append(emitted).append('"');
+                break;
+            case "TextField":
+                sb.append(" promptText=\"field ").append(emitted).append('"');
+                break;
+            case "Slider":
+                sb.append(" min=\"0\" max=\"100\" value=\"").append(random.nextInt(100)).append('"');
+                break;
+            case "Rectangle":
+                sb.append(" width=\"20\" height=\"10\"");
+                break;
+            default:
+                break;
+        }
+        sb.append("/>\n");
+    }
+
+    private String id(String prefix) {
+        if (random.nextDouble() >= idDensity) {
+            return "";
+        }
+        String id = prefix + emitted;
+        ids.add(id);
+        return " id=\"" + id + "\"";
+    }
+
+    /**
+     * Prints FXML for the arguments nodes, depth, idDensity and mix.
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int d = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        double density = args.length > 2 ? Double.parseDouble(args[2]) : 0.5;
+        String m = args.length > 3 ? args[3] : DEFAULT_MIX;
+        System.out.print(new SyntheticFxml(n, d, density, m, 42).generate());
+    }
+}
@@ -82,6 +82,15 @@ fxdeploy$common = function () {
      */
     var cssFile = '';
 
+    /**
+     * Escapes a value for the tab-separated encodings read by
+     * FXWebApp.applyUpdates and CommandBus.invokeBatch.
+     */
+    var escapeField = function (value) {
+        return value === null || value === undefined ? '\\0'
+                : String(value).replace(/\\/g, '\\\\').replace(/\n/g, '\\n').replace(/\t/g, '\\t');
+    };
+
     return {
 
         /**
@@ -388,6 +397,112 @@ fxdeploy$common = function () {
             if (message_element) {
                 message_element.innerHTML = string;
             }
+        },
+
+        /**
+         * Trampoline for FXWebApp batched dispatch.
+         * Invokes each queued callback record in turn, so that a whole batch
+         * of callbacks costs a single Java to JavaScript call. A callback
+         * that throws is reported on the console and does not stop the rest
+         * of the batch, which is never delivered again.
+         * Enable batching from a page using
+         *       app.getBatchDispatcher().setEnabled(true)
+         *
+         * @param records array of CallbackRecord instances
+         * @returns the indexes of the callbacks that threw, separated by
+         * commas - an empty string if none did
+         */
+        dispatchBatch: function (records) {
+            var k;
+            var record;
+            var failed = [];
+            for (k = 0; k < records.length; k++) {
+                record = records[k];
+                try {
+                    record.callbacks[record.callbackName](record.node, record.event, record.mapValue, record.data);
+                } catch (e) {
+                    failed.push(k);
+                    if (window.console) {
+                        console.error(record.callbackName + ": " + e);
+                    }
+                }
+            }
+            return failed.join(',');
+        },
+
+        /**
+         * Sends binary data to a named BinarySlot of an FXWebApp, base64
+         * encoding it in chunks, then completes the slot.
+         *
+         * @param app the FXWebApp instance
+         * @param name the name of the slot
+         * @param data an ArrayBuffer or typed array
+         * @param chunkSize optional chunk size in bytes (default 1MB)
+         * @returns the BinarySlot
+         */
+        sendBinary: function (app, name, data, chunkSize) {
+            var bytes = data instanceof ArrayBuffer
+                    ? new Uint8Array(data)
+                    : new Uint8Array(data.buffer, data.byteOffset, data.byteLength);
+            var size = chunkSize || 1048576;
+            var slot = app.getBinaryChannel().open(name, bytes.length);
+            var offset;
+            var end;
+            var k;
+            var binary;
+            for (offset = 0; offset < bytes.length; offset += size) {
+                end = Math.min(offset + size, bytes.length);
+                binary = '';
+                for (k = offset; k < end; k++) {
+                    binary += String.fromCharCode(bytes[k]);
+                }
+                slot.write(window.btoa(binary));
+            }
+            slot.complete();
+            return slot;
+        },
+
+        /**
+         * Encodes property updates for FXWebApp.applyUpdates: one line per
+         * update holding the node id, property name and value separated by
+         * tabs, with backslash escapes in the value.
+         *
+         * @param updates array of [id, property, value] arrays
+         * @returns the encoded string
+         */
+        encodeUpdates: function (updates) {
+            var lines = [];
+            var k;
+            for (k = 0; k < updates.length; k++) {
+                lines.push(updates[k][0] + '\t' + updates[k][1] + '\t' + escapeField(updates[k][2]));
+            }
+            return lines.join('\n');
+        },
+
+        /**
+         * Encodes commands for CommandBus.invokeBatch: one line per command
+         * holding its name and arguments separated by tabs, with backslash
+         * escapes in the arguments, so that the batch crosses to Java as a
+         * single string.
+         *
+         * @param commands array of [name, [args...]] arrays
+         * @returns the encoded string
+         */
+        encodeCommands: function (commands) {
+            var lines = [];
+            var fields;
+            var args;
+            var k;
+            var j;
+            for (k = 0; k < commands.length; k++) {
+                fields = [commands[k][0]];
+                args = commands[k][1] || [];
+                for (j = 0; j < args.length; j++) {
+                    fields.push(escapeField(args[j]));
+                }
+                lines.push(fields.join('\t'));
+            }
+            return lines.join('\n');
         }
     };
 
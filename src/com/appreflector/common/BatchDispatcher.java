@@ -0,0 +1,309 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.appreflector.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import netscape.javascript.JSException;
+import netscape.javascript.JSObject;
+
+/**
+ * Delivers the JavaScript callbacks queued during a pulse to the host in a
+ * single LiveConnect call.
+ *
+ * <p>
+ * By default, each callback invoked by the controller costs its own task on
+ * the Platform thread and its own Java to JavaScript call. When batching is
+ * enabled, callbacks are instead queued as {@code CallbackRecord}s. The
+ * first record queued schedules a flush in the {@code INPUT} lane of the
+ * {@code FXScheduler}, which passes
+ * every record queued up to that point, as an array, to a host-side
+ * trampoline function. The trampoline (by default
+ * {@code fxdeploy$common.dispatchBatch} from fxdeploy-common.js) invokes the
+ * callbacks in order.
+ * </p>
+ * <p>
+ * If the trampoline can not be found, the records in that batch are
+ * delivered individually instead. Once the trampoline has been called, a
+ * batch is never delivered again: the trampoline isolates a callback that
+ * throws from the rest of the batch and returns the indexes of the records
+ * that failed, separated by commas. Every other record of the batch counts
+ * as delivered. An error thrown by the trampoline itself counts against the
+ * whole batch.
+ * </p>
+ *
+ * @author ML
+ */
+public final class BatchDispatcher {
+
+    /**
+     * The default trampoline, defined in fxdeploy-common.js.
+     */
+    public static final String DEFAULT_TRAMPOLINE = "fxdeploy$common.dispatchBatch";
+
+    private final FXWebApp app;
+    private final ConcurrentLinkedQueue<CallbackRecord> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean enabled;
+    private volatile String trampoline = DEFAULT_TRAMPOLINE;
+
+    private volatile long batches;
+    private volatile long records;
+    private volatile int maxBatchSize;
+    private volatile long fallbacks;
+    private volatile long failures;
+
+    BatchDispatcher(FXWebApp app) {
+        this.app = app;
+    }
+
+    /**
+     * @return true if callbacks are batched
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables batching of callbacks. Takes effect immediately.
+     *
+     * @param enabled true to batch callbacks
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return the name of the host function receiving each batch
+     */
+    public String getTrampoline() {
+        return trampoline;
+    }
+
+    /**
+     * Sets the host function that receives each batch. It is called with a
+     * single argument: an array of {@code CallbackRecord}s.
+     *
+     * @param trampoline the function name, which may be qualified by the
+     * name of a host context object e.g. "myObject.myFunction"
+     */
+    public void setTrampoline(String trampoline) {
+        this.trampoline = trampoline;
+    }
+
+    /**
+     * Disables batching and discards the callbacks queued.
+     */
+    void dispose() {
+        enabled = false;
+        queue.clear();
+    }
+
+    /**
+     * Queues a callback for delivery with the current batch.
+     *
+     * @param member the host object defining the callback
+     * @param method the name of the callback
+     * @param args the callback arguments
+     * @param raised the {@code System.nanoTime} at which the event was raised
+     * @param delivered run once the callback is known to have returned, or
+     * null
+     */
+    void post(JSObject member, String method, Object[] args, long raised, Runnable delivered) {
+
+        queue.add(new CallbackRecord(member, method, args, raised, delivered));
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                FXScheduler.getDefault().post(FXScheduler.Priority.INPUT, this::flush);
+            } catch (RejectedExecutionException ex) {
+                // Let a later post try again
+                scheduled.set(false);
+                throw ex;
+            }
+        }
+    }
+
+    private void flush() {
+        scheduled.set(false);
+        ArrayList<CallbackRecord> list = new ArrayList<>();
+        CallbackRecord record;
+        while ((record = queue.poll()) != null) {
+            list.add(record);
+        }
+        if (list.isEmpty()) {
+            return;
+        }
+        CallbackRecord[] batch = list.toArray(new CallbackRecord[list.size()]);
+        batches++;
+        records += batch.length;
+        maxBatchSize = Math.max(maxBatchSize, batch.length);
+        JSObject owner = resolveTrampoline();
+        try {
+            if (owner != null) {
+                Object failed = owner.call(functionName(), new Object[]{batch});
+                delivered(batch, failed);
+            } else {
+                // No usable trampoline - deliver individually
+                fallbacks++;
+                for (CallbackRecord r : batch) {
+                    try {
+                        r.callbacks.call(r.callbackName, r.getArguments());
+                        r.delivered();
+                    } catch (JSException ex) {
+                        failures++;
+                    }
+                }
+            }
+        } catch (JSException ex) {
+            // Thrown by the trampoline, which may have delivered some records
+            failures += batch.length;
+        } finally {
+            for (CallbackRecord r : batch) {
+                app.getAppMetrics().called(r.callbackName, r.raised);
+            }
+        }
+    }
+
+    /**
+     * Counts the failures reported by the trampoline and marks every other
+     * record of the batch delivered. A trampoline that only returns a count
+     * leaves it unknown which records failed, so then only a clean batch
+     * counts as delivered.
+     *
+     * @param batch the batch passed to the trampoline
+     * @param failed the indexes of the failed records separated by commas,
+     * or the number of failed records
+     */
+    private void delivered(CallbackRecord[] batch, Object failed) {
+        boolean[] skip = new boolean[batch.length];
+        if (failed instanceof Number) {
+            long n = ((Number) failed).longValue();
+            failures += n;
+            Arrays.fill(skip, n != 0);
+        } else if (failed instanceof String) {
+            for (String index : ((String) failed).split(",")) {
+                try {
+                    int k = Integer.parseInt(index.trim());
+                    if (k >= 0 && k < batch.length && !skip[k]) {
+                        skip[k] = true;
+                        failures++;
+                    }
+                } catch (NumberFormatException ex) {
+                    // Empty when nothing failed
+                }
+            }
+        }
+        for (int k = 0; k < batch.length; k++) {
+            if (!skip[k]) {
+                batch[k].delivered();
+            }
+        }
+    }
+
+    /**
+     * Finds the object owning the trampoline function.
+     *
+     * @return the owner, or null if the trampoline is not defined
+     */
+    private JSObject resolveTrampoline() {
+        try {
+            JSObject owner = app.getHostContext();
+            String name = trampoline;
+            int dot = name.lastIndexOf('.');
+            if (dot > 0) {
+                for (String part : name.substring(0, dot).split("\\.")) {
+                    owner = (JSObject) owner.getMember(part);
+                }
+            }
+            return owner != null && owner.getMember(functionName()) instanceof JSObject ? owner : null;
+        } catch (JSException | ClassCastException | NullPointerException ex) {
+            return null;
+        }
+    }
+
+    private String functionName() {
+        String name = trampoline;
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * @return the number of batches delivered
+     */
+    public long getBatchCount() {
+        return batches;
+    }
+
+    /**
+     * @return the number of callbacks delivered in batches
+     */
+    public long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * @return the size of the largest batch delivered
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * @return the mean number of callbacks per batch
+     */
+    public double getMeanBatchSize() {
+        long n = batches;
+        return n == 0 ? 0d : (double) records / n;
+    }
+
+    /**
+     * @return the number of batches delivered individually because the
+     * trampoline could not be found
+     */
+    public long getFallbackCount() {
+        return fallbacks;
+    }
+
+    /**
+     * @return the number of batched callbacks that threw, counting every
+     * callback of a batch whose trampoline threw
+     */
+    public long getFailureCount() {
+        return failures;
+    }
+}
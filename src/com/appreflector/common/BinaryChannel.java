@@ -0,0 +1,138 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.appreflector.common;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A set of named {@code BinarySlot}s through which the host page passes bulk
+ * binary data to an {@code FXWebApp}.
+ *
+ * <p>
+ * e.g. in JavaScript:<br>
+ * {@code var slot = app.getBinaryChannel().open("series", 8 * points);}<br>
+ * {@code slot.write(base64Chunk); ...}<br>
+ * {@code slot.complete();}<br>
+ * and in Java:<br>
+ * {@code app.getBinaryChannel().addListener((slot, data) -> plot(data.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer()));}<br>
+ * Views are big-endian, as for any {@code ByteBuffer}, while typed arrays in
+ * the host are normally little-endian.
+ * </p>
+ *
+ * @author ML
+ */
+public final class BinaryChannel {
+
+    private final ConcurrentHashMap<String, BinarySlot> slots = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<BinarySlot.Listener> listeners = new CopyOnWriteArrayList<>();
+
+    BinaryChannel() {
+    }
+
+    /**
+     * Returns the named slot, empty and ready to fill, creating it if
+     * necessary.
+     *
+     * @param name the name of the slot
+     * @param capacity the expected size of the data in bytes
+     * @return the slot
+     */
+    public BinarySlot open(String name, int capacity) {
+        BinarySlot slot = slots.computeIfAbsent(name, (String n) -> new BinarySlot(this, n, capacity));
+        slot.reset();
+        return slot;
+    }
+
+    /**
+     * @param name the name of the slot
+     * @return the named slot, or null
+     */
+    public BinarySlot get(String name) {
+        return slots.get(name);
+    }
+
+    /**
+     * Removes the named slot, releasing its buffer when no longer referenced.
+     *
+     * @param name the name of the slot
+     * @return the slot removed, or null
+     */
+    public BinarySlot remove(String name) {
+        return slots.remove(name);
+    }
+
+    /**
+     * @return the names of the slots
+     */
+    public String[] getNames() {
+        return slots.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * Removes all slots and listeners.
+     */
+    void clear() {
+        slots.clear();
+        listeners.clear();
+    }
+
+    /**
+     * Adds a listener notified when any slot of the channel is completed.
+     *
+     * @param listener the listener
+     */
+    public void addListener(BinarySlot.Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener the listener
+     */
+    public void removeListener(BinarySlot.Listener listener) {
+        listeners.remove(listener);
+    }
+
+    void fireCompleted(BinarySlot slot, ByteBuffer view) {
+        listeners.stream().forEach((BinarySlot.Listener l) -> {
+            l.slotCompleted(slot, view.duplicate());
+        });
+    }
+}
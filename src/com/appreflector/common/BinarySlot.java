@@ -0,0 +1,235 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.appreflector.common;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A named buffer of binary data filled by the host page in chunks.
+ *
+ * <p>
+ * LiveConnect has no binary type, so the host writes each chunk as a base64
+ * string, which is decoded straight into a direct {@code ByteBuffer}. Once
+ * the host calls {@code complete}, listeners receive a read-only view of the
+ * data, which they may read without copying. The
+ * {@code fxdeploy$common.sendBinary} helper in fxdeploy-common.js does the
+ * chunking and encoding.
+ * </p>
+ * <p>
+ * A slot may be refilled after it is complete by calling {@code reset}.
+ * Views handed out before a reset must not be used afterwards.
+ * </p>
+ *
+ * @author ML
+ */
+public final class BinarySlot {
+
+    /**
+     * Receives notification that a slot has been completely filled.
+     */
+    public interface Listener {
+
+        /**
+         * Called, on the thread completing the slot, once it is filled.
+         *
+         * @param slot the slot
+         * @param data a read-only view of the data, positioned at 0
+         */
+        public void slotCompleted(BinarySlot slot, ByteBuffer data);
+    }
+
+    private final String name;
+    private final BinaryChannel channel;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private ByteBuffer buffer;
+    private boolean complete;
+    private long generation;
+
+    BinarySlot(BinaryChannel channel, String name, int capacity) {
+        this.channel = channel;
+        this.name = name;
+        this.buffer = ByteBuffer.allocateDirect(Math.max(0, capacity));
+    }
+
+    /**
+     * @return the name of the slot
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of bytes the slot can hold without reallocating
+     */
+    public synchronized int getCapacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public synchronized int getSize() {
+        return buffer.position();
+    }
+
+    /**
+     * @return true if the slot has been completed and not since reset
+     */
+    public synchronized boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return the number of times the slot has been completed
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Appends a chunk of data.
+     *
+     * @param base64 the chunk, base64 encoded
+     * @return the number of bytes written so far
+     */
+    public synchronized int write(String base64) {
+        return writeAt(buffer.position(), base64);
+    }
+
+    /**
+     * Writes a chunk of data at an offset, allowing chunks to arrive out of
+     * order. The size of the slot becomes the end of the furthest chunk.
+     *
+     * @param offset the offset in bytes
+     * @param base64 the chunk, base64 encoded
+     * @return the number of bytes written so far
+     */
+    public synchronized int writeAt(int offset, String base64) {
+        if (complete) {
+            throw new IllegalStateException("Slot " + name + " is complete: reset it before refilling");
+        }
+        byte[] bytes = Base64.getDecoder().decode(base64);
+        int end = offset + bytes.length;
+        if (offset < 0 || end < 0) {
+            throw new IndexOutOfBoundsException("offset: " + offset);
+        }
+        ensureCapacity(end);
+        int size = Math.max(buffer.position(), end);
+        buffer.position(offset);
+        buffer.put(bytes);
+        buffer.position(size);
+        return size;
+    }
+
+    /**
+     * Marks the slot complete and notifies its listeners and those of its
+     * channel.
+     */
+    public void complete() {
+        ByteBuffer view;
+        synchronized (this) {
+            if (complete) {
+                return;
+            }
+            complete = true;
+            generation++;
+            view = view();
+        }
+        listeners.stream().forEach((Listener l) -> {
+            l.slotCompleted(this, view.duplicate());
+        });
+        channel.fireCompleted(this, view);
+    }
+
+    /**
+     * Empties the slot so that it may be refilled. The buffer is retained.
+     */
+    public synchronized void reset() {
+        buffer.clear();
+        complete = false;
+    }
+
+    /**
+     * Returns a read-only view of the data written, positioned at 0. The
+     * view shares the slot's memory.
+     *
+     * @return the view
+     */
+    public synchronized ByteBuffer getBuffer() {
+        return view();
+    }
+
+    /**
+     * Adds a listener notified when the slot is completed.
+     *
+     * @param listener the listener
+     */
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener the listener
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private ByteBuffer view() {
+        ByteBuffer view = buffer.asReadOnlyBuffer();
+        view.flip();
+        return view;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= buffer.capacity()) {
+            return;
+        }
+        int capacity = Math.max(required, buffer.capacity() > Integer.MAX_VALUE / 2
+                ? Integer.MAX_VALUE : buffer.capacity() * 2);
+        ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+        int size = buffer.position();
+        buffer.flip();
+        grown.put(buffer);
+        grown.position(size);
+        buffer = grown;
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.appreflector.common;
+
+import javafx.event.Event;
+import javafx.scene.Node;
+import netscape.javascript.JSObject;
+
+/**
+ * A single queued callback invocation delivered to the host by the
+ * {@code BatchDispatcher}.
+ *
+ * The fields are public so that the host-side trampoline can read them
+ * directly.
+ *
+ * @author ML
+ */
+public final class CallbackRecord {
+
+    /**
+     * The host object defining the callback.
+     */
+    public final JSObject callbacks;
+    /**
+     * Name of the callback to invoke.
+     */
+    public final String callbackName;
+    /**
+     * Id of the node that generated the callback (may be null).
+     */
+    public final String nodeId;
+    /**
+     * Name of the event type, or null if the callback was not generated by
+     * an event.
+     */
+    public final String eventType;
+    /**
+     * The value associated with the node in the callback object map.
+     */
+    public final Object mapValue;
+    /**
+     * The node that generated the callback.
+     */
+    public final Object node;
+    /**
+     * The event (or value) passed as the second callback argument.
+     */
+    public final Object event;
+    /**
+     * The data passed as the fourth callback argument.
+     */
+    public final Object data;
+    /**
+     * The {@code System.nanoTime} at which the event was raised.
+     */
+    final long raised;
+    /**
+     * Run once the callback has returned, or null.
+     */
+    private final Runnable delivered;
+
+    CallbackRecord(JSObject callbacks, String callbackName, Object[] args, long raised, Runnable delivered) {
+        this.callbacks = callbacks;
+        this.raised = raised;
+        this.delivered = delivered;
+        this.callbackName = callbackName;
+        this.node = args.length > 0 ? args[0] : null;
+        this.event = args.length > 1 ? args[1] : null;
+        this.mapValue = args.length > 2 ? args[2] : null;
+        this.data = args.length > 3 ? args[3] : null;
+        this.nodeId = node instanceof Node ? ((Node) node).getId() : null;
+        this.eventType = event instanceof Event ? ((Event) event).getEventType().getName() : null;
+    }
+
+    /**
+     * @return the arguments in the order passed to an unbatched callback
+     */
+    Object[] getArguments() {
+        return new Object[]{node, event, mapValue, data};
+    }
+
+    /**
+     * Notes that the callback has returned.
+     */
+    void delivered() {
+        if (delivered != null) {
+            delivered.run();
+        }
+    }
+}
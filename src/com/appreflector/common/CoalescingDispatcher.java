@@ -0,0 +1,206 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.appreflector.common;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import javafx.animation.AnimationTimer;
+import javafx.scene.Node;
+
+/**
+ * Coalesces high-frequency value changes into at most one JavaScript callback
+ * per node per pulse (or per configurable interval).
+ *
+ * <p>
+ * Forwarding every change of e.g. a {@code Slider} value to the host would
+ * flood it with LiveConnect calls. When coalescing is enabled, the default
+ * controller instead posts each change here: only the latest pending change
+ * for each node is retained and all retained changes are delivered together
+ * on the next JavaFX pulse. Intermediate changes that are superseded before
+ * delivery are counted as dropped, and deliveries whose callback throws as
+ * failed, without holding up the others.
+ * </p>
+ * <p>
+ * All methods other than the statistics getters and the configuration
+ * getters and setters must be called on the JavaFX Platform thread.
+ * </p>
+ *
+ * @author ML
+ */
+public final class CoalescingDispatcher {
+
+    private final LinkedHashMap<Node, Runnable> pending = new LinkedHashMap<>();
+    private AnimationTimer timer;
+    private boolean running;
+    private volatile boolean enabled;
+    private volatile long intervalNanos;
+    private long lastFlush;
+    private volatile long delivered;
+    private volatile long dropped;
+    private volatile long failed;
+
+    CoalescingDispatcher() {
+    }
+
+    /**
+     * @return true if the controller should use coalesced value listeners
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables coalescing. This takes effect the next time the
+     * controller is initialised.
+     *
+     * When enabled, callbacks also fire as the value of a control changes,
+     * for controls whose {@code ControlAdapter} exposes a value property. For
+     * controls such as {@code Slider}, whose event only reports a change of
+     * value (mouse release), the value callbacks replace the event. The second
+     * callback argument is then the new value rather than an event.
+     *
+     * @param enabled true to enable coalescing
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return the minimum interval between deliveries in milliseconds (0
+     * delivers once per pulse)
+     */
+    public long getInterval() {
+        return TimeUnit.NANOSECONDS.toMillis(intervalNanos);
+    }
+
+    /**
+     * Sets the minimum interval between deliveries.
+     *
+     * @param millis the interval in milliseconds - 0 delivers once per pulse
+     */
+    public void setInterval(long millis) {
+        intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+    }
+
+    /**
+     * Posts a delivery for a node, replacing any delivery for that node that
+     * has not yet run.
+     *
+     * @param node the node whose value changed
+     * @param delivery the code that invokes the callback
+     */
+    void post(Node node, Runnable delivery) {
+        if (pending.put(node, delivery) != null) {
+            dropped++;
+        }
+        if (!running) {
+            if (timer == null) {
+                timer = new AnimationTimer() {
+                    @Override
+                    public void handle(long now) {
+                        flush(now);
+                    }
+                };
+            }
+            running = true;
+            timer.start();
+        }
+    }
+
+    /**
+     * Disables coalescing and discards the deliveries pending.
+     */
+    void dispose() {
+        enabled = false;
+        pending.clear();
+        if (timer != null) {
+            timer.stop();
+        }
+        running = false;
+    }
+
+    private void flush(long now) {
+        if (now - lastFlush < intervalNanos) {
+            return;
+        }
+        lastFlush = now;
+        if (pending.isEmpty()) {
+            running = false;
+            timer.stop();
+            return;
+        }
+        ArrayList<Runnable> deliveries = new ArrayList<>(pending.values());
+        pending.clear();
+        for (Runnable r : deliveries) {
+            // A callback that throws must not cost the other nodes their latest value
+            try {
+                r.run();
+                delivered++;
+            } catch (RuntimeException ex) {
+                failed++;
+            }
+        }
+    }
+
+    /**
+     * @return the number of callbacks delivered
+     */
+    public long getDelivered() {
+        return delivered;
+    }
+
+    /**
+     * @return the number of deliveries whose callback threw
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the number of intermediate changes superseded before delivery
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return the number of deliveries waiting for the next pulse
+     */
+    public int getPending() {
+        return pending.size();
+    }
+}
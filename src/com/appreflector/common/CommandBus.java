@@ -0,0 +1,357 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.appreflector.common;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import netscape.javascript.JSObject;
+
+/**
+ * A table of named operations that the host page invokes through one entry
+ * point, in place of a LiveConnect call, resolved reflectively, per method.
+ *
+ * <p>
+ * Java code registers each command once, bound to a {@code MethodHandle}.
+ * The host then calls, e.g.:<br>
+ * {@code var bus = app.getCommandBus();}<br>
+ * {@code bus.invoke("setData", [json]);}<br>
+ * {@code var results = bus.invokeBatch(fxdeploy$common.encodeCommands(}<br>
+ * {@code         [["patch", ["row", 42]], ["lookup", ["#status"]]]));}<br>
+ * Arguments given as a JavaScript array are read from it element by element,
+ * each a further crossing from Java back to JavaScript. A batch is instead
+ * passed as one string, so that it costs a single crossing however many
+ * commands it holds. Commands run on the calling thread - the JavaFX
+ * Platform thread when called from the host page.
+ * </p>
+ * <p>
+ * A batch is encoded as for {@code FXWebApp.applyUpdates}: one line per
+ * command, holding the command name and then its arguments, separated by
+ * tabs:<br>
+ * {@code patch\trow\t42\nlookup\t#status}<br>
+ * Within an argument, "\n", "\t" and "\\" stand for a newline, a tab and
+ * a backslash, while an argument of "\0" stands for null. The arguments of
+ * a batch are all strings, so the "util" command takes its arguments as a
+ * single string there. The {@code fxdeploy$common.encodeCommands} helper in
+ * fxdeploy-common.js encodes an array of [name, [args...]] arrays.
+ * </p>
+ * <p>
+ * Each app's bus is created with the commands:
+ * </p>
+ * <ul>
+ * <li><strong>lookup</strong>(selector) - {@code FXWebApp.lookup}</li>
+ * <li><strong>getData</strong>() and <strong>setData</strong>(data)</li>
+ * <li><strong>patch</strong>(key, value) - {@code VersionedDataStore.patch}</li>
+ * <li><strong>putMapValue</strong>(id, value) - puts a value in the callback
+ * object map</li>
+ * <li><strong>applyUpdates</strong>(ops) - {@code FXWebApp.applyUpdates}</li>
+ * <li><strong>util</strong>(name, method, args) - calls a method of a named
+ * host utility</li>
+ * </ul>
+ * <p>
+ * The number of calls, the number that failed and a histogram of the time
+ * taken are kept for each command.
+ * </p>
+ *
+ * @author ML
+ */
+public final class CommandBus {
+
+    private static final MethodType SPREAD = MethodType.methodType(Object.class, Object[].class);
+
+    /**
+     * A registered command, with its statistics.
+     */
+    public static final class Command {
+
+        private final String name;
+        private final int arity;
+        private final MethodHandle handle;
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final LatencyHistogram time = new LatencyHistogram();
+
+        private Command(String name, int arity, MethodHandle handle) {
+            this.name = name;
+            this.arity = arity;
+            this.handle = handle;
+        }
+
+        /**
+         * @return the name of the command
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the number of arguments the command takes
+         */
+        public int getArity() {
+            return arity;
+        }
+
+        /**
+         * @return the number of times the command has been invoked
+         */
+        public long getCallCount() {
+            return calls.get();
+        }
+
+        /**
+         * @return the number of invocations that threw
+         */
+        public long getFailureCount() {
+            return failures.get();
+        }
+
+        /**
+         * @return the histogram of the time taken by each invocation
+         */
+        public LatencyHistogram getTime() {
+            return time;
+        }
+
+        @Override
+        public String toString() {
+            return name + "/" + arity + "{calls=" + calls + ", failures=" + failures + ", time=" + time + "}";
+        }
+    }
+
+    private final ConcurrentHashMap<String, Command> commands = new ConcurrentHashMap<>();
+    private final FXWebApp app;
+
+    CommandBus(FXWebApp app) {
+        this.app = app;
+        register("lookup", app, "lookup", 1);
+        register("getData", app, "getData", 0);
+        register("setData", app, "setData", 1);
+        register("patch", app.getDataStore(), "patch", 2);
+        register("applyUpdates", app, "applyUpdates", 1);
+        register("putMapValue", app.getCallbackObjectMap(), "put", 2);
+        try {
+            register("util", MethodHandles.lookup().findVirtual(CommandBus.class, "util",
+                    MethodType.methodType(Object.class, String.class, String.class, Object.class)).bindTo(this));
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Registers a command, replacing any of the same name.
+     *
+     * @param name the name of the command
+     * @param handle the operation, with any receiver already bound
+     */
+    public void register(String name, MethodHandle handle) {
+        int arity = handle.type().parameterCount();
+        MethodHandle spread = handle.asType(handle.type().generic()).asSpreader(Object[].class, arity).asType(SPREAD);
+        commands.put(name, new Command(name, arity, spread));
+    }
+
+    /**
+     * Registers a public method as a command, replacing any of the same
+     * name. The method is chosen by name and number of parameters.
+     *
+     * @param name the name of the command
+     * @param target the receiver, or for a static method its {@code Class}
+     * @param method the method name
+     * @param arity the number of parameters
+     * @throws IllegalArgumentException if there is no such method
+     */
+    public void register(String name, Object target, String method, int arity) {
+        boolean isStatic = target instanceof Class;
+        Class<?> type = isStatic ? (Class<?>) target : target.getClass();
+        for (Method m : type.getMethods()) {
+            if (m.getName().equals(method) && m.getParameterCount() == arity
+                    && Modifier.isStatic(m.getModifiers()) == isStatic) {
+                try {
+                    m.setAccessible(true);
+                    MethodHandle handle = MethodHandles.lookup().unreflect(m);
+                    register(name, isStatic ? handle : handle.bindTo(target));
+                    return;
+                } catch (IllegalAccessException | SecurityException ex) {
+                    throw new IllegalArgumentException("Can not access " + method + " of " + type.getName() + ": " + ex);
+                }
+            }
+        }
+        throw new IllegalArgumentException("No method " + method + " with " + arity + " parameters on " + type.getName());
+    }
+
+    /**
+     * Removes a command.
+     *
+     * @param name the name of the command
+     */
+    public void unregister(String name) {
+        commands.remove(name);
+    }
+
+    /**
+     * @param name the name of the command
+     * @return the command, with its statistics, or null
+     */
+    public Command getCommand(String name) {
+        return commands.get(name);
+    }
+
+    /**
+     * @return the names of the commands registered
+     */
+    public String[] getNames() {
+        return commands.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * Invokes a command.
+     *
+     * @param name the name of the command
+     * @param args the arguments - a JavaScript array, a Java array, a single
+     * string or null
+     * @return the result, or null for a void command
+     * @throws IllegalArgumentException if there is no such command, or the
+     * number of arguments is wrong
+     * @throws Throwable if the command throws
+     */
+    public Object invoke(String name, Object args) throws Throwable {
+        Command command = commands.get(name);
+        if (command == null) {
+            throw new IllegalArgumentException("No command " + name);
+        }
+        Object[] values = toArray(args);
+        if (values.length != command.arity) {
+            throw new IllegalArgumentException("Command " + name + " takes " + command.arity
+                    + " arguments, not " + values.length);
+        }
+        command.calls.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            return command.handle.invokeExact(values);
+        } catch (Throwable ex) {
+            command.failures.incrementAndGet();
+            throw ex;
+        } finally {
+            command.time.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Invokes a sequence of commands, stopping at the first that throws.
+     *
+     * @param batch the encoded commands
+     * @return the results, in order
+     * @throws IllegalArgumentException if a line has no command name
+     * @throws Throwable as for {@code invoke}
+     */
+    public Object[] invokeBatch(String batch) throws Throwable {
+        List<Object> results = new ArrayList<>();
+        if (batch == null) {
+            return new Object[0];
+        }
+        int line = 0;
+        int start = 0;
+        while (start <= batch.length()) {
+            int end = batch.indexOf('\n', start);
+            if (end < 0) {
+                end = batch.length();
+            }
+            line++;
+            if (end > start) {
+                List<String> fields = new ArrayList<>();
+                int from = start;
+                while (true) {
+                    int tab = batch.indexOf('\t', from);
+                    if (tab < 0 || tab > end) {
+                        fields.add(batch.substring(from, end));
+                        break;
+                    }
+                    fields.add(batch.substring(from, tab));
+                    from = tab + 1;
+                }
+                String name = fields.get(0);
+                if (name.isEmpty()) {
+                    throw new IllegalArgumentException("Batch line " + line + " has no command name");
+                }
+                Object[] args = new Object[fields.size() - 1];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = SceneUpdater.unescape(fields.get(i + 1));
+                }
+                results.add(invoke(name, args));
+            }
+            start = end + 1;
+        }
+        return results.toArray();
+    }
+
+    /**
+     * Implements the "util" command.
+     */
+    private Object util(String name, String method, Object args) throws Throwable {
+        return app.getUtilities().invoke(name, method, toArray(args));
+    }
+
+    private static Object[] toArray(Object args) {
+        if (args == null) {
+            return new Object[0];
+        }
+        if (args instanceof String) {
+            return new Object[]{args};
+        }
+        if (args instanceof Object[]) {
+            return (Object[]) args;
+        }
+        if (args instanceof JSObject) {
+            JSObject array = (JSObject) args;
+            Object length = array.getMember("length");
+            if (!(length instanceof Number)) {
+                throw new IllegalArgumentException("Not an array: " + args);
+            }
+            Object[] values = new Object[((Number) length).intValue()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = array.getSlot(i);
+            }
+            return values;
+        }
+        throw new IllegalArgumentException("Not an array: " + args);
+    }
+}
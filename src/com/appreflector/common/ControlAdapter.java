@@ -0,0 +1,116 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.appreflector.common;
+
+import java.util.function.Consumer;
+import javafx.beans.value.ObservableValue;
+import javafx.scene.Node;
+
+/**
+ * Adapts a type of JavaFX control for use by the default
+ * {@code FXWebAppController}.
+ *
+ * <p>
+ * An adapter installs the listener that forwards the control's user events to
+ * a JavaScript callback, and names the callback used when no node-specific
+ * callback is defined. Adapters are looked up by the class of each node: an
+ * adapter also applies to subclasses of its control type unless a more
+ * specific adapter is registered.
+ * </p>
+ * <p>
+ * Additional adapters can be registered by calling
+ * {@code ControlAdapterRegistry.register} or by listing them in
+ * {@code META-INF/services/com.appreflector.common.ControlAdapter}.
+ * </p>
+ *
+ * @author ML
+ */
+public interface ControlAdapter {
+
+    /**
+     * @return the control class handled by this adapter
+     */
+    public Class<? extends Node> getControlType();
+
+    /**
+     * Returns the name of the callback used by controls lacking a
+     * node-specific callback: the shortened, lower case class name appended
+     * with "$callback" e.g. "button$callback".
+     *
+     * @return the callback name
+     */
+    public String getDefaultCallback();
+
+    /**
+     * Installs a listener on the node, replacing any listener installed
+     * earlier by this adapter.
+     *
+     * @param node the node - an instance of the control type
+     * @param forwarder receives the event (or new value) to pass to the
+     * callback
+     */
+    public void install(Node node, Consumer<Object> forwarder);
+
+    /**
+     * Removes the listener installed by {@code install}, leaving any handlers
+     * or listeners installed by the application in place.
+     *
+     * @param node the node
+     */
+    public void uninstall(Node node);
+
+    /**
+     * Returns the property holding the control's value, for use when
+     * callbacks are coalesced.
+     *
+     * @param node the node
+     * @return the value property or null if the control has no single value
+     */
+    public default ObservableValue<?> getValueProperty(Node node) {
+        return null;
+    }
+
+    /**
+     * Tests if the discrete event forwarded by {@code install} merely reports
+     * a change of value (e.g. releasing a {@code Slider}), so that it is
+     * replaced, rather than supplemented, by coalesced value callbacks.
+     *
+     * @return true if the event is replaced when coalescing
+     */
+    public default boolean isReplacedByValueCallbacks() {
+        return false;
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.appreflector.common;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import javafx.scene.Node;
+
+/**
+ * Registry of {@code ControlAdapter}s keyed by control class.
+ *
+ * <p>
+ * Lookups resolve superclasses and are cached per concrete node class, so the
+ * cost of finding the adapter for a node does not depend on the number of
+ * adapters registered. Registering an adapter clears the cache.
+ * </p>
+ * <p>
+ * The standard adapters are registered first, followed by any listed as
+ * services on the class path - which may therefore replace them.
+ * </p>
+ *
+ * @author ML
+ */
+public final class ControlAdapterRegistry {
+
+    /**
+     * Cached marker for classes with no adapter.
+     */
+    private static final ControlAdapter NONE = new StandardControlAdapter(Node.class, null, null, null, null, false);
+
+    private static final ConcurrentHashMap<Class<?>, ControlAdapter> ADAPTERS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Class<?>, ControlAdapter> LOOKUP = new ConcurrentHashMap<>();
+
+    static {
+        StandardControlAdapter.getAdapters().stream().forEach((ControlAdapter adapter) -> {
+            register(adapter);
+        });
+        Iterator<ControlAdapter> it = ServiceLoader.load(ControlAdapter.class).iterator();
+        while (true) {
+            try {
+                if (!it.hasNext()) {
+                    break;
+                }
+                register(it.next());
+            } catch (ServiceConfigurationError ex) {
+                // Skip adapters that can not be loaded
+            }
+        }
+    }
+
+    private ControlAdapterRegistry() {
+    }
+
+    /**
+     * Registers an adapter, replacing any registered for the same control
+     * type.
+     *
+     * @param adapter the adapter
+     */
+    public static void register(ControlAdapter adapter) {
+        ADAPTERS.put(adapter.getControlType(), adapter);
+        LOOKUP.clear();
+    }
+
+    /**
+     * Returns the adapter for a node class: the adapter registered for the
+     * class itself or, failing that, for its nearest superclass.
+     *
+     * @param type the node class
+     * @return the adapter or null if there is none
+     */
+    public static ControlAdapter lookup(Class<?> type) {
+        ControlAdapter adapter = LOOKUP.get(type);
+        if (adapter == null) {
+            adapter = NONE;
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                ControlAdapter a = ADAPTERS.get(c);
+                if (a != null) {
+                    adapter = a;
+                    break;
+                }
+            }
+            LOOKUP.put(type, adapter);
+        }
+        return adapter == NONE ? null : adapter;
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.appreflector.common;
+
+import java.util.LinkedHashMap;
+
+/**
+ * The changes made to a {@code VersionedDataStore} between two versions.
+ *
+ * <p>
+ * When delta delivery is enabled, this is the fourth argument of each
+ * callback. It holds the keys changed since the version last delivered to
+ * that callback, in the order they were changed, e.g. in JavaScript:<br>
+ * {@code var keys = delta.getKeys();}<br>
+ * {@code for (var i = 0; i < keys.length; i++)}{<br>
+ * {@code model[keys[i]] = delta.get(keys[i]);}<br> }<br>
+ * The first delivery to a callback is a full delta holding every key.
+ * </p>
+ *
+ * @author ML
+ */
+public final class DataDelta {
+
+    private final long since;
+    private final long version;
+    private final LinkedHashMap<String, Object> changed;
+    private final String[] removed;
+
+    DataDelta(long since, long version, LinkedHashMap<String, Object> changed, String[] removed) {
+        this.since = since;
+        this.version = version;
+        this.changed = changed;
+        this.removed = removed;
+    }
+
+    /**
+     * @return the version the delta starts from - 0 for a full delta
+     */
+    public long getSince() {
+        return since;
+    }
+
+    /**
+     * @return the version of the store when the delta was taken
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return true if the delta holds every key rather than only changes
+     */
+    public boolean isFull() {
+        return since == 0;
+    }
+
+    /**
+     * @return true if nothing changed
+     */
+    public boolean isEmpty() {
+        return changed.isEmpty() && removed.length == 0;
+    }
+
+    /**
+     * @return the keys changed or added, in the order they were changed
+     */
+    public String[] getKeys() {
+        return changed.keySet().toArray(new String[changed.size()]);
+    }
+
+    /**
+     * @return the keys removed
+     */
+    public String[] getRemovedKeys() {
+        return removed.clone();
+    }
+
+    /**
+     * @param key the key
+     * @return the value of a changed key, or null
+     */
+    public Object get(String key) {
+        return changed.get(key);
+    }
+
+    @Override
+    public String toString() {
+        return "DataDelta{since=" + since + ", version=" + version
+                + ", changed=" + changed.keySet() + ", removed=" + removed.length + "}";
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.appreflector.common;
+
+import javafx.scene.Node;
+import netscape.javascript.JSException;
+import netscape.javascript.JSObject;
+
+/**
+ * Selects how the default controller delivers callbacks to the host.
+ *
+ * <p>
+ * The policy is set for an app with {@code FXWebApp.setDispatchPolicy} and
+ * may be overridden for individual nodes, either with
+ * {@code FXWebApp.setNodeDispatchPolicy} or by giving the node's entry in the
+ * callback object map a value that is a {@code DispatchPolicy}, the name of
+ * one, or a JavaScript object with a {@code dispatchPolicy} property naming
+ * one e.g.:<br>
+ * {@code app.getCallbackObjectMap().put("myButton", {dispatchPolicy: "DIRECT"});}
+ * </p>
+ *
+ * @author ML
+ */
+public enum DispatchPolicy {
+
+    /**
+     * Calls the callback inline when the event is raised on the JavaFX
+     * Platform thread and no other callback is being delivered inline.
+     * Otherwise the call is deferred.
+     */
+    DIRECT,
+    /**
+     * Calls the callback later on the JavaFX Platform thread, through the
+     * {@code FXScheduler}. This is the default.
+     */
+    DEFERRED;
+
+    /**
+     * Key in {@code Node.getProperties()} of the policy for a node.
+     */
+    static final String NODE_KEY = "DispatchPolicy";
+
+    /**
+     * Returns the policy for a node, if one has been set.
+     *
+     * @param node the node
+     * @return the policy or null
+     */
+    static DispatchPolicy of(Node node) {
+        return (DispatchPolicy) node.getProperties().get(NODE_KEY);
+    }
+
+    /**
+     * Sets, or with null clears, the policy for a node.
+     *
+     * @param node the node
+     * @param policy the policy or null
+     */
+    static void set(Node node, DispatchPolicy policy) {
+        if (policy == null) {
+            node.getProperties().remove(NODE_KEY);
+        } else {
+            node.getProperties().put(NODE_KEY, policy);
+        }
+    }
+
+    /**
+     * Resolves the policy named by a callback object map value.
+     *
+     * @param value the value
+     * @return the policy or null if the value does not name one
+     */
+    static DispatchPolicy from(Object value) {
+        if (value instanceof DispatchPolicy) {
+            return (DispatchPolicy) value;
+        }
+        if (value instanceof JSObject) {
+            try {
+                value = ((JSObject) value).getMember("dispatchPolicy");
+            } catch (JSException ex) {
+                return null;
+            }
+        }
+        if (value instanceof String) {
+            for (DispatchPolicy policy : values()) {
+                if (policy.name().equalsIgnoreCase((String) value)) {
+                    return policy;
+                }
+            }
+        }
+        return null;
+    }
+}
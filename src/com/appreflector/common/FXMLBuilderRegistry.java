@@ -0,0 +1,99 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.appreflector.common;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of {@code FXMLBuilder}s keyed by the content hash of the FXML they
+ * were generated from.
+ *
+ * The builders listed as services on the class path are loaded the first time
+ * the registry is used.
+ *
+ * @author ML
+ */
+public final class FXMLBuilderRegistry {
+
+    private static final ConcurrentHashMap<String, FXMLBuilder> BUILDERS = new ConcurrentHashMap<>();
+
+    static {
+        Iterator<FXMLBuilder> it = ServiceLoader.load(FXMLBuilder.class).iterator();
+        while (true) {
+            try {
+                if (!it.hasNext()) {
+                    break;
+                }
+                register(it.next());
+            } catch (ServiceConfigurationError ex) {
+                // Skip builders that can not be loaded - their FXML will be
+                // parsed instead
+            }
+        }
+    }
+
+    private FXMLBuilderRegistry() {
+    }
+
+    /**
+     * Registers a builder, replacing any existing builder for the same FXML.
+     *
+     * @param builder the builder
+     */
+    public static void register(FXMLBuilder builder) {
+        BUILDERS.put(builder.getFxmlHash(), builder);
+    }
+
+    /**
+     * Returns the builder for the FXML with the specified hash.
+     *
+     * @param hash the content hash as computed by {@code FXMLTemplateCache}
+     * @return the builder or null if none is registered
+     */
+    static FXMLBuilder get(String hash) {
+        return BUILDERS.get(hash);
+    }
+
+    /**
+     * @return the number of registered builders
+     */
+    public static int size() {
+        return BUILDERS.size();
+    }
+}
@@ -0,0 +1,394 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.appreflector.common;
+
+import com.appreflector.common.FXMLTemplate.InstanceTemplate;
+import com.appreflector.common.FXMLTemplate.PropertyTemplate;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import javafx.scene.layout.Pane;
+
+/**
+ * Build-time compiler that converts FXML documents to Java {@code FXMLBuilder}
+ * classes.
+ *
+ * <p>
+ * Each generated class creates the same scene graph, with the same node ids,
+ * as the {@code FXMLLoader} would for its FXML. The generated classes are
+ * listed in {@code META-INF/services/com.appreflector.common.FXMLBuilder} in
+ * the output directory so that, once compiled and packaged with the
+ * application, {@code FXWebApp} finds them by the content hash of the FXML it
+ * is given and uses them instead of parsing the FXML. FXML without a
+ * generated builder is loaded as before.
+ * </p>
+ * <p>
+ * Usage:<br>
+ * {@code java com.appreflector.common.FXMLCompiler [-d outputDir] [-p package] file.fxml ...}
+ * </p>
+ * <p>
+ * The hash covers the whole document, so compile the FXML exactly as the page
+ * supplies it. Short-form FXML is given the default {@code FXWebApp} header
+ * before hashing - if the page adds its own header (as fxdeploy-common.js does
+ * for files lacking one), compile the FXML with that header in place.
+ * Documents using FXML features that can not be compiled (event handler
+ * attributes, expressions, includes, scripts etc.) are skipped with a warning.
+ * </p>
+ *
+ * @author ML
+ */
+public final class FXMLCompiler {
+
+    private static final String SERVICES = "META-INF/services/" + FXMLBuilder.class.getName();
+
+    /**
+     * Children per generated method before additions to a list are split
+     * into separate methods, keeping each method well within the JVM limit on
+     * method size.
+     */
+    private static final int CHUNK = 64;
+
+    private final List<StringBuilder> methods = new ArrayList<>();
+    private int ids;
+
+    private FXMLCompiler() {
+    }
+
+    /**
+     * Command line entry point.
+     *
+     * @param args the command line arguments
+     * @throws IOException if a file can not be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        File outputDir = new File(".");
+        String packageName = "";
+        List<File> files = new ArrayList<>();
+        for (int k = 0; k < args.length; k++) {
+            switch (args[k]) {
+                case "-d":
+                    outputDir = new File(args[++k]);
+                    break;
+                case "-p":
+                    packageName = args[++k];
+                    break;
+                default:
+                    files.add(new File(args[k]));
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println("Usage: FXMLCompiler [-d outputDir] [-p package] file.fxml ...");
+            System.exit(1);
+        }
+
+        Set<String> services = new LinkedHashSet<>();
+        File servicesFile = new File(outputDir, SERVICES);
+        if (servicesFile.exists()) {
+            services.addAll(Files.readAllLines(servicesFile.toPath(), StandardCharsets.UTF_8));
+        }
+        File packageDir = packageName.isEmpty() ? outputDir : new File(outputDir, packageName.replace('.', File.separatorChar));
+        packageDir.mkdirs();
+        for (File file : files) {
+            String fxml = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            String className = toClassName(file.getName());
+            try {
+                String source = compile(fxml, packageName, className);
+                Files.write(new File(packageDir, className + ".java").toPath(), source.getBytes(StandardCharsets.UTF_8));
+                services.add(packageName.isEmpty() ? className : packageName + "." + className);
+            } catch (IllegalArgumentException ex) {
+                System.err.println("FXMLCompiler: skipped " + file + ": " + ex.getMessage());
+            }
+        }
+        servicesFile.getParentFile().mkdirs();
+        Files.write(servicesFile.toPath(), services, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Generates the source of an {@code FXMLBuilder} for the supplied FXML.
+     *
+     * @param fxml short-form or fully-formed FXML
+     * @param packageName the package of the generated class (may be empty)
+     * @param className the simple name of the generated class
+     * @return the Java source
+     * @throws IllegalArgumentException if the FXML can not be compiled
+     */
+    public static String compile(String fxml, String packageName, String className) {
+        String normalized = FXMLTemplateCache.normalize(FXWebApp.withDefaultHeader(fxml));
+        String hash = FXMLTemplateCache.hash(normalized);
+        FXMLTemplate template = FXMLTemplate.compile(normalized, hash);
+        if (!template.isReplayable()) {
+            throw new IllegalArgumentException(template.getNotReplayableReason());
+        }
+        InstanceTemplate root = template.getRootElement();
+        if (!Pane.class.isAssignableFrom(root.type)) {
+            throw new IllegalArgumentException("The FXML root is not a Pane: " + root.type.getName());
+        }
+
+        FXMLCompiler compiler = new FXMLCompiler();
+        String rootMethod = compiler.emitMethod(root);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("// Generated by com.appreflector.common.FXMLCompiler - do not edit.\n");
+        if (!packageName.isEmpty()) {
+            sb.append("package ").append(packageName).append(";\n");
+        }
+        sb.append("\n");
+        sb.append("import javafx.fxml.JavaFXBuilderFactory;\n");
+        sb.append("import javafx.scene.layout.Pane;\n");
+        sb.append("\n");
+        sb.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+        sb.append("public final class ").append(className).append(" implements com.appreflector.common.FXMLBuilder {\n");
+        sb.append("\n");
+        sb.append("    public static final String FXML_HASH = \"").append(hash).append("\";\n");
+        sb.append("\n");
+        sb.append("    @Override\n");
+        sb.append("    public String getFxmlHash() {\n");
+        sb.append("        return FXML_HASH;\n");
+        sb.append("    }\n");
+        sb.append("\n");
+        sb.append("    @Override\n");
+        sb.append("    public Pane build() {\n");
+        sb.append("        return ").append(rootMethod).append("(new JavaFXBuilderFactory());\n");
+        sb.append("    }\n");
+        for (StringBuilder method : compiler.methods) {
+            sb.append("\n").append(method);
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    /**
+     * Emits a method that builds and returns the instance.
+     *
+     * @return the method name
+     */
+    private String emitMethod(InstanceTemplate t) {
+        String name = "build" + ids++;
+        String type = t.type.getCanonicalName();
+        StringBuilder body = new StringBuilder();
+        methods.add(body);
+        body.append("    private static ").append(type).append(" ").append(name).append("(JavaFXBuilderFactory factory) {\n");
+        String var = emitInline(t, body);
+        body.append("        return ").append(var).append(";\n");
+        body.append("    }\n");
+        return name;
+    }
+
+    /**
+     * Emits the code for an instance, returning the name of the local
+     * variable holding it. Instances with child elements are built in their
+     * own methods.
+     */
+    private String emitInstance(InstanceTemplate t, StringBuilder body) {
+        for (PropertyTemplate p : t.properties) {
+            if (!p.elements.isEmpty()) {
+                String var = "n" + ids++;
+                String type = t.type.getCanonicalName();
+                line(body, type + " " + var + " = " + emitMethod(t) + "(factory);");
+                return var;
+            }
+        }
+        return emitInline(t, body);
+    }
+
+    private String emitInline(InstanceTemplate t, StringBuilder body) {
+        String var = "n" + ids++;
+        String type = t.type.getCanonicalName();
+        if (t.valueOf != null) {
+            line(body, type + " " + var + " = " + type + ".valueOf(" + quote(t.value) + ");");
+            return var;
+        }
+        if (t.usesBuilder()) {
+            String builder = "b" + var;
+            line(body, "javafx.util.Builder<?> " + builder + " = factory.getBuilder(" + type + ".class);");
+            for (PropertyTemplate p : t.properties) {
+                String value = p.elements.isEmpty() ? quote(p.literal) : emitInstance(p.elements.get(0), body);
+                line(body, "((java.util.Map<String, Object>) " + builder + ").put(" + quote(p.name) + ", " + value + ");");
+            }
+            line(body, type + " " + var + " = (" + type + ") " + builder + ".build();");
+            return var;
+        }
+        line(body, type + " " + var + " = new " + type + "();");
+        for (PropertyTemplate p : t.properties) {
+            emitProperty(t, var, p, body);
+        }
+        if (t.getIdProperty() != null) {
+            emitProperty(t, var, t.getIdProperty(), body);
+        }
+        return var;
+    }
+
+    private void emitProperty(InstanceTemplate t, String var, PropertyTemplate p, StringBuilder body) {
+        if (p.listGetter != null) {
+            String list = var + "." + p.listGetter.getName() + "()";
+            if (p.constant != null) {
+                for (Object item : (List<?>) p.constant) {
+                    line(body, list + ".add(" + quote((String) item) + ");");
+                }
+            }
+            if (p.elements.size() <= CHUNK) {
+                for (InstanceTemplate element : p.elements) {
+                    line(body, list + ".add(" + emitInstance(element, body) + ");");
+                }
+                return;
+            }
+            String type = t.type.getCanonicalName();
+            for (int from = 0; from < p.elements.size(); from += CHUNK) {
+                String name = "add" + ids++;
+                StringBuilder chunk = new StringBuilder();
+                methods.add(chunk);
+                chunk.append("    private static void ").append(name).append("(").append(type)
+                        .append(" parent, JavaFXBuilderFactory factory) {\n");
+                String parentList = "parent." + p.listGetter.getName() + "()";
+                for (InstanceTemplate element : p.elements.subList(from, Math.min(from + CHUNK, p.elements.size()))) {
+                    line(chunk, parentList + ".add(" + emitInstance(element, chunk) + ");");
+                }
+                chunk.append("    }\n");
+                line(body, name + "(" + var + ", factory);");
+            }
+            return;
+        }
+        Class<?> target = p.setter.getParameterTypes()[p.isStatic ? 1 : 0];
+        String value = p.elements.isEmpty() ? literal(p.constant, target, p.literal) : emitInstance(p.elements.get(0), body);
+        if (p.isStatic) {
+            line(body, p.setter.getDeclaringClass().getCanonicalName() + "." + p.setter.getName() + "(" + var + ", " + value + ");");
+        } else {
+            line(body, var + "." + p.setter.getName() + "(" + value + ");");
+        }
+    }
+
+    /**
+     * Returns a Java expression for a literal value already converted by the
+     * template compiler.
+     */
+    private static String literal(Object value, Class<?> target, String text) {
+        if (value == null) {
+            return "null";
+        } else if (value instanceof String) {
+            return quote((String) value);
+        } else if (value instanceof Double) {
+            double d = (Double) value;
+            if (Double.isNaN(d)) {
+                return "Double.NaN";
+            } else if (Double.isInfinite(d)) {
+                return d > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY";
+            }
+            return Double.toString(d);
+        } else if (value instanceof Float) {
+            float f = (Float) value;
+            if (Float.isNaN(f)) {
+                return "Float.NaN";
+            } else if (Float.isInfinite(f)) {
+                return f > 0 ? "Float.POSITIVE_INFINITY" : "Float.NEGATIVE_INFINITY";
+            }
+            return Float.toString(f) + "f";
+        } else if (value instanceof Long) {
+            return value + "L";
+        } else if (value instanceof Short) {
+            return "(short) " + value;
+        } else if (value instanceof Byte) {
+            return "(byte) " + value;
+        } else if (value instanceof Character) {
+            return String.format("'\\u%04x'", (int) (Character) value);
+        } else if (value instanceof Integer || value instanceof Boolean) {
+            return value.toString();
+        } else if (value instanceof Enum) {
+            return ((Enum<?>) value).getDeclaringClass().getCanonicalName() + "." + ((Enum<?>) value).name();
+        }
+        // Converted with a static valueOf(String) on the property type
+        return target.getCanonicalName() + ".valueOf(" + quote(text) + ")";
+    }
+
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7e) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static void line(StringBuilder body, String code) {
+        body.append("        ").append(code).append("\n");
+    }
+
+    private static String toClassName(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        String base = dot > 0 ? fileName.substring(0, dot) : fileName;
+        StringBuilder sb = new StringBuilder();
+        boolean upper = true;
+        for (char c : base.toCharArray()) {
+            if (Character.isJavaIdentifierPart(c)) {
+                sb.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            } else {
+                upper = true;
+            }
+        }
+        if (sb.length() == 0 || !Character.isJavaIdentifierStart(sb.charAt(0))) {
+            sb.insert(0, 'F');
+        }
+        return sb.append("FXMLBuilder").toString();
+    }
+}
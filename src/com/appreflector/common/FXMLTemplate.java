@@ -0,0 +1,688 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.appreflector.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javafx.beans.DefaultProperty;
+import javafx.fxml.FXMLLoader;
+import javafx.fxml.JavaFXBuilderFactory;
+import javafx.fxml.LoadException;
+import javafx.scene.layout.Pane;
+import javafx.util.Builder;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.ProcessingInstruction;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * A parsed, reusable form of an FXML document.
+ *
+ * <p>
+ * The XML is parsed once, when the template is compiled. The classes named by
+ * the elements, and the setters or list getters named by their attributes and
+ * property elements, are resolved at the same time. Each call to
+ * {@code instantiate} then builds a new scene graph from the template without
+ * reading the XML again or repeating those reflective lookups.
+ * </p>
+ * <p>
+ * Only the static subset of FXML can be replayed in this way: instance and
+ * property elements, literal attribute values, static properties such as
+ * {@code GridPane.columnIndex}, {@code fx:id} and {@code fx:value}. Documents
+ * using event handlers, expressions, resources, scripts, includes or other
+ * {@code fx:} elements are not replayable and are handed to an
+ * {@code FXMLLoader} on each instantiation instead - as they were before
+ * templates were introduced.
+ * </p>
+ *
+ * @author ML
+ */
+final class FXMLTemplate {
+
+    private final String hash;
+    private final byte[] bytes;
+    private final InstanceTemplate root;
+    private final String notReplayableReason;
+
+    private FXMLTemplate(String hash, byte[] bytes, InstanceTemplate root, String reason) {
+        this.hash = hash;
+        this.bytes = bytes;
+        this.root = root;
+        this.notReplayableReason = reason;
+    }
+
+    /**
+     * Compiles a template from fully-formed FXML (i.e. with its header).
+     *
+     * @param fxml the FXML
+     * @param hash the content hash used to key the template
+     * @return the template
+     */
+    static FXMLTemplate compile(String fxml, String hash) {
+        byte[] bytes = fxml.getBytes(StandardCharsets.UTF_8);
+        try {
+            return new FXMLTemplate(hash, bytes, new Compiler().compile(bytes), null);
+        } catch (NotReplayableException ex) {
+            return new FXMLTemplate(hash, bytes, null, ex.getMessage());
+        }
+    }
+
+    /**
+     * @return the content hash of the FXML this template was compiled from
+     */
+    String getHash() {
+        return hash;
+    }
+
+    /**
+     * @return true if the scene graph can be built without the FXMLLoader
+     */
+    boolean isReplayable() {
+        return root != null;
+    }
+
+    /**
+     * @return the reason this template is not replayable or null if it is
+     */
+    String getNotReplayableReason() {
+        return notReplayableReason;
+    }
+
+    /**
+     * Returns the root element of the compiled document.
+     *
+     * @return the root element or null if the template is not replayable
+     */
+    InstanceTemplate getRootElement() {
+        return root;
+    }
+
+    /**
+     * Builds a new scene graph from this template.
+     *
+     * May be called from any thread: the template itself is never modified.
+     *
+     * @param controller the controller to set on the FXMLLoader when the
+     * template is not replayable
+     * @return the root of the new scene graph
+     * @throws IOException if the scene graph can not be built
+     */
+    Pane instantiate(Object controller) throws IOException {
+        if (root == null) {
+            FXMLLoader loader = new FXMLLoader();
+            loader.setController(controller);
+            return loader.load(new ByteArrayInputStream(bytes));
+        }
+        Object instance = root.build(new JavaFXBuilderFactory());
+        if (!(instance instanceof Pane)) {
+            throw new LoadException("The FXML root is not a Pane: " + instance.getClass().getName());
+        }
+        return (Pane) instance;
+    }
+
+    /**
+     * A compiled instance element.
+     */
+    static final class InstanceTemplate {
+
+        final Class<?> type;
+        final String fxId;
+        final Constructor<?> constructor;
+        final Method valueOf;
+        final String value;
+        final List<PropertyTemplate> properties = new ArrayList<>();
+
+        private PropertyTemplate idProperty;
+
+        private InstanceTemplate(Class<?> type, String fxId, Constructor<?> constructor, Method valueOf, String value) {
+            this.type = type;
+            this.fxId = fxId;
+            this.constructor = constructor;
+            this.valueOf = valueOf;
+            this.value = value;
+        }
+
+        /**
+         * @return true if this element is created through a JavaFX
+         * {@code Builder} rather than a no-argument constructor
+         */
+        boolean usesBuilder() {
+            return constructor == null && valueOf == null;
+        }
+
+        /**
+         * @return the setter for the id property, applied from {@code fx:id}
+         * when no explicit id is given, or null
+         */
+        PropertyTemplate getIdProperty() {
+            return idProperty;
+        }
+
+        @SuppressWarnings("unchecked")
+        Object build(JavaFXBuilderFactory factory) throws LoadException {
+            try {
+                if (valueOf != null) {
+                    return valueOf.invoke(null, value);
+                }
+                if (constructor == null) {
+                    Builder<?> builder = factory.getBuilder(type);
+                    Map<String, Object> map = (Map<String, Object>) builder;
+                    for (PropertyTemplate p : properties) {
+                        map.put(p.name, p.elements.isEmpty() ? p.constant : p.elements.get(0).build(factory));
+                    }
+                    return builder.build();
+                }
+                Object instance = constructor.newInstance();
+                for (PropertyTemplate p : properties) {
+                    p.apply(instance, factory);
+                }
+                if (idProperty != null) {
+                    idProperty.apply(instance, factory);
+                }
+                return instance;
+            } catch (InstantiationException | IllegalAccessException | InvocationTargetException | RuntimeException ex) {
+                throw new LoadException("Could not build " + type.getName() + ": " + ex);
+            }
+        }
+    }
+
+    /**
+     * A compiled property assignment: an attribute, a property element or an
+     * instance added to the default property of its parent.
+     */
+    static final class PropertyTemplate {
+
+        final String name;
+        final Method setter;
+        final Method listGetter;
+        final boolean isStatic;
+        final Object constant;
+        final String literal;
+        final List<InstanceTemplate> elements = new ArrayList<>();
+
+        private PropertyTemplate(String name, Method setter, Method listGetter, boolean isStatic,
+                Object constant, String literal) {
+            this.name = name;
+            this.setter = setter;
+            this.listGetter = listGetter;
+            this.isStatic = isStatic;
+            this.constant = constant;
+            this.literal = literal;
+        }
+
+        @SuppressWarnings("unchecked")
+        void apply(Object instance, JavaFXBuilderFactory factory)
+                throws IllegalAccessException, InvocationTargetException, LoadException {
+            if (listGetter != null) {
+                List<Object> list = (List<Object>) listGetter.invoke(instance);
+                if (constant != null) {
+                    list.addAll((List<Object>) constant);
+                }
+                for (InstanceTemplate element : elements) {
+                    list.add(element.build(factory));
+                }
+                return;
+            }
+            Object value = elements.isEmpty() ? constant : elements.get(0).build(factory);
+            if (isStatic) {
+                setter.invoke(null, instance, value);
+            } else {
+                setter.invoke(instance, value);
+            }
+        }
+    }
+
+    /**
+     * Thrown while compiling when the document uses FXML features that the
+     * template can not replay.
+     */
+    private static final class NotReplayableException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        NotReplayableException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Compiles a DOM of the FXML into {@code InstanceTemplate}s.
+     */
+    private static final class Compiler {
+
+        private final List<String> imports = new ArrayList<>();
+        private final ClassLoader classLoader = FXMLLoader.getDefaultClassLoader();
+
+        InstanceTemplate compile(byte[] bytes) throws NotReplayableException {
+            Document document;
+            try {
+                DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+                dbf.setNamespaceAware(true);
+                // FXML has no use for a DTD, so refuse one rather than resolve external entities
+                dbf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+                dbf.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+                dbf.setXIncludeAware(false);
+                dbf.setExpandEntityReferences(false);
+                DocumentBuilder builder = dbf.newDocumentBuilder();
+                // Throws on fatal errors without printing them
+                builder.setErrorHandler(new DefaultHandler());
+                document = builder.parse(new ByteArrayInputStream(bytes));
+            } catch (Exception ex) {
+                // Let the FXMLLoader report the error
+                throw new NotReplayableException(ex.toString());
+            }
+            for (org.w3c.dom.Node n = document.getFirstChild(); n != null; n = n.getNextSibling()) {
+                if (n instanceof ProcessingInstruction) {
+                    ProcessingInstruction pi = (ProcessingInstruction) n;
+                    if (!"import".equals(pi.getTarget())) {
+                        throw new NotReplayableException("Unsupported processing instruction: " + pi.getTarget());
+                    }
+                    imports.add(pi.getData().trim());
+                }
+            }
+            return compileInstance(document.getDocumentElement());
+        }
+
+        private InstanceTemplate compileInstance(Element element) throws NotReplayableException {
+            if (isFx(element)) {
+                throw new NotReplayableException("Unsupported element: " + element.getTagName());
+            }
+            Class<?> type = resolveClass(element.getLocalName());
+            String fxId = null;
+            String value = null;
+            boolean hasId = false;
+            List<Attr> attributes = new ArrayList<>();
+            NamedNodeMap map = element.getAttributes();
+            for (int k = 0; k < map.getLength(); k++) {
+                Attr attr = (Attr) map.item(k);
+                String name = attr.getName();
+                if (name.equals("xmlns") || name.startsWith("xmlns:")) {
+                    continue;
+                }
+                if (isFx(attr)) {
+                    switch (attr.getLocalName()) {
+                        case "id":
+                            fxId = attr.getValue();
+                            break;
+                        case "value":
+                            value = attr.getValue();
+                            break;
+                        default:
+                            throw new NotReplayableException("Unsupported attribute: " + name);
+                    }
+                } else {
+                    hasId |= name.equals("id");
+                    attributes.add(attr);
+                }
+            }
+
+            InstanceTemplate instance;
+            if (value != null) {
+                Method valueOf = findValueOf(type);
+                if (valueOf == null || !attributes.isEmpty() || hasChildElements(element)) {
+                    throw new NotReplayableException("Unsupported fx:value on " + type.getName());
+                }
+                return new InstanceTemplate(type, fxId, null, valueOf, value);
+            }
+            Constructor<?> constructor = null;
+            try {
+                constructor = type.getConstructor();
+            } catch (NoSuchMethodException ex) {
+                if (new JavaFXBuilderFactory(classLoader).getBuilder(type) == null) {
+                    throw new NotReplayableException("No constructor or builder for " + type.getName());
+                }
+            }
+            instance = new InstanceTemplate(type, fxId, constructor, null, null);
+
+            for (Attr attr : attributes) {
+                String name = attr.getLocalName() == null ? attr.getName() : attr.getLocalName();
+                String text = attr.getValue();
+                // As well as the prefixes, the FXMLLoader reads a leading backslash as an escape
+                if (!text.isEmpty() && "$#%@\\".indexOf(text.charAt(0)) >= 0) {
+                    throw new NotReplayableException("Unsupported attribute value: " + name + "=" + text);
+                }
+                if (instance.usesBuilder()) {
+                    instance.properties.add(new PropertyTemplate(name, null, null, false, text, text));
+                } else {
+                    instance.properties.add(compileAttribute(type, name, text));
+                }
+            }
+
+            PropertyTemplate defaultProperty = null;
+            for (org.w3c.dom.Node n = element.getFirstChild(); n != null; n = n.getNextSibling()) {
+                if (n instanceof Element) {
+                    Element child = (Element) n;
+                    String name = child.getLocalName();
+                    if (isPropertyElement(child)) {
+                        instance.properties.add(compilePropertyElement(instance, child));
+                    } else {
+                        if (instance.usesBuilder()) {
+                            throw new NotReplayableException("Unsupported child of " + type.getName());
+                        }
+                        if (defaultProperty == null) {
+                            DefaultProperty annotation = type.getAnnotation(DefaultProperty.class);
+                            if (annotation == null) {
+                                throw new NotReplayableException("No default property for " + type.getName());
+                            }
+                            defaultProperty = resolve(type, annotation.value(), null);
+                            instance.properties.add(defaultProperty);
+                        } else if (defaultProperty.listGetter == null) {
+                            throw new NotReplayableException("Default property of " + type.getName() + " is not a list");
+                        }
+                        defaultProperty.elements.add(compileInstance(child));
+                    }
+                } else if (n.getNodeType() == org.w3c.dom.Node.TEXT_NODE && !n.getNodeValue().trim().isEmpty()) {
+                    throw new NotReplayableException("Unsupported text in " + type.getName());
+                } else if (n.getNodeType() == org.w3c.dom.Node.CDATA_SECTION_NODE) {
+                    throw new NotReplayableException("Unsupported CDATA in " + type.getName());
+                }
+            }
+
+            if (fxId != null && !hasId && !instance.usesBuilder()) {
+                try {
+                    instance.idProperty = resolve(type, "id", fxId);
+                } catch (NotReplayableException ex) {
+                    // No id property - fx:id is then only used by the controller
+                }
+            }
+            return instance;
+        }
+
+        private PropertyTemplate compileAttribute(Class<?> type, String name, String text)
+                throws NotReplayableException {
+            int dot = name.lastIndexOf('.');
+            if (dot > 0) {
+                return resolveStatic(resolveClass(name.substring(0, dot)), name.substring(dot + 1), text);
+            }
+            return resolve(type, name, text);
+        }
+
+        private PropertyTemplate compilePropertyElement(InstanceTemplate parent, Element element)
+                throws NotReplayableException {
+            String name = element.getLocalName();
+            List<InstanceTemplate> values = new ArrayList<>();
+            StringBuilder text = new StringBuilder();
+            for (org.w3c.dom.Node n = element.getFirstChild(); n != null; n = n.getNextSibling()) {
+                if (n instanceof Element) {
+                    if (isPropertyElement((Element) n)) {
+                        throw new NotReplayableException("Nested property element " + n.getNodeName());
+                    }
+                    values.add(compileInstance((Element) n));
+                } else if (n.getNodeType() == org.w3c.dom.Node.TEXT_NODE
+                        || n.getNodeType() == org.w3c.dom.Node.CDATA_SECTION_NODE) {
+                    text.append(n.getNodeValue());
+                }
+            }
+            if (element.getAttributes().getLength() > 0) {
+                throw new NotReplayableException("Attributes on property element " + name);
+            }
+            String literal = values.isEmpty() ? text.toString().trim() : null;
+
+            PropertyTemplate property;
+            if (parent.usesBuilder()) {
+                if (values.size() > 1 || name.indexOf('.') >= 0) {
+                    throw new NotReplayableException("Unsupported property " + name + " of " + parent.type.getName());
+                }
+                property = new PropertyTemplate(name, null, null, false, literal, literal);
+            } else if (name.indexOf('.') > 0) {
+                int dot = name.lastIndexOf('.');
+                property = resolveStatic(resolveClass(name.substring(0, dot)), name.substring(dot + 1), literal);
+            } else {
+                property = resolve(parent.type, name, literal);
+            }
+            if (values.size() > 1 && property.listGetter == null) {
+                throw new NotReplayableException("Multiple values for " + name);
+            }
+            property.elements.addAll(values);
+            return property;
+        }
+
+        /**
+         * Resolves an instance property to a setter or, for read-only lists,
+         * to a getter. Any literal value is coerced to the property type here
+         * so that it is not re-converted on every instantiation.
+         */
+        private PropertyTemplate resolve(Class<?> type, String name, String literal) throws NotReplayableException {
+            Method getter = findGetter(type, name);
+            Method setter = findSetter(type, name);
+            if (setter != null) {
+                Object constant = literal == null ? null : coerce(literal, setter.getParameterTypes()[0]);
+                return new PropertyTemplate(name, setter, null, false, constant, literal);
+            }
+            if (getter != null && List.class.isAssignableFrom(getter.getReturnType())) {
+                Object constant = null;
+                if (literal != null && !literal.isEmpty()) {
+                    List<String> items = new ArrayList<>();
+                    for (String item : literal.split(",")) {
+                        items.add(item.trim());
+                    }
+                    constant = items;
+                }
+                return new PropertyTemplate(name, null, getter, false, constant, literal);
+            }
+            throw new NotReplayableException("No property " + name + " on " + type.getName());
+        }
+
+        private PropertyTemplate resolveStatic(Class<?> type, String name, String literal) throws NotReplayableException {
+            String setterName = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            Method setter = findMethod(type, setterName, 2, true);
+            if (setter == null) {
+                throw new NotReplayableException("No static property " + name + " on " + type.getName());
+            }
+            Object constant = literal == null ? null : coerce(literal, setter.getParameterTypes()[1]);
+            return new PropertyTemplate(name, setter, null, true, constant, literal);
+        }
+
+        private Class<?> resolveClass(String name) throws NotReplayableException {
+            if (name.indexOf('.') > 0 && Character.isLowerCase(name.charAt(0))) {
+                try {
+                    return classLoader.loadClass(name);
+                } catch (ClassNotFoundException ex) {
+                    throw new NotReplayableException("Class not found: " + name);
+                }
+            }
+            for (String imp : imports) {
+                String candidate;
+                if (imp.endsWith(".*")) {
+                    candidate = imp.substring(0, imp.length() - 1).concat(name);
+                } else if (imp.endsWith("." + name)) {
+                    candidate = imp;
+                } else {
+                    continue;
+                }
+                try {
+                    return classLoader.loadClass(candidate);
+                } catch (ClassNotFoundException ex) {
+                    // Try the next import
+                }
+            }
+            throw new NotReplayableException("Class not found: " + name);
+        }
+    }
+
+    /**
+     * Converts a literal attribute value to the type of the property it is
+     * assigned to.
+     *
+     * @param value the literal
+     * @param type the target type
+     * @return the converted value
+     * @throws NotReplayableException if the conversion is not supported
+     */
+    @SuppressWarnings("unchecked")
+    private static Object coerce(String value, Class<?> type) throws NotReplayableException {
+        try {
+            if (type == String.class || type == Object.class) {
+                return value;
+            } else if (type == double.class || type == Double.class) {
+                return Double.valueOf(value);
+            } else if (type == int.class || type == Integer.class) {
+                return Integer.valueOf(value);
+            } else if (type == boolean.class || type == Boolean.class) {
+                return Boolean.valueOf(value);
+            } else if (type == float.class || type == Float.class) {
+                return Float.valueOf(value);
+            } else if (type == long.class || type == Long.class) {
+                return Long.valueOf(value);
+            } else if (type == short.class || type == Short.class) {
+                return Short.valueOf(value);
+            } else if (type == byte.class || type == Byte.class) {
+                return Byte.valueOf(value);
+            } else if (type == char.class || type == Character.class) {
+                return value.charAt(0);
+            } else if (type.isEnum()) {
+                try {
+                    return Enum.valueOf((Class<Enum>) type, value);
+                } catch (IllegalArgumentException ex) {
+                    return Enum.valueOf((Class<Enum>) type, value.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase());
+                }
+            }
+            Method valueOf = findValueOf(type);
+            if (valueOf != null) {
+                return valueOf.invoke(null, value);
+            }
+        } catch (IllegalAccessException | InvocationTargetException | RuntimeException ex) {
+            throw new NotReplayableException("Can not convert \"" + value + "\" to " + type.getName());
+        }
+        throw new NotReplayableException("Can not convert \"" + value + "\" to " + type.getName());
+    }
+
+    /**
+     * Converts a literal value to the type of a property, as for an FXML
+     * attribute.
+     *
+     * @param value the literal
+     * @param type the property type
+     * @return the converted value
+     * @throws IllegalArgumentException if the conversion is not supported
+     */
+    static Object convert(String value, Class<?> type) {
+        try {
+            return coerce(value, type);
+        } catch (NotReplayableException ex) {
+            throw new IllegalArgumentException(ex.getMessage());
+        }
+    }
+
+    /**
+     * Finds the getter of an instance property.
+     *
+     * @param type the class
+     * @param name the property name
+     * @return the getter, or null
+     */
+    static Method findGetter(Class<?> type, String name) {
+        String cap = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        Method getter = findMethod(type, "get" + cap, 0, false);
+        return getter != null ? getter : findMethod(type, "is" + cap, 0, false);
+    }
+
+    /**
+     * Finds the setter of an instance property, preferring the one taking
+     * the type returned by its getter.
+     *
+     * @param type the class
+     * @param name the property name
+     * @return the setter, or null
+     */
+    static Method findSetter(Class<?> type, String name) {
+        String cap = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        Method getter = findGetter(type, name);
+        Class<?> propertyType = getter == null ? null : getter.getReturnType();
+        for (Method m : type.getMethods()) {
+            if (m.getName().equals("set" + cap) && m.getParameterCount() == 1
+                    && !Modifier.isStatic(m.getModifiers())
+                    && (propertyType == null || m.getParameterTypes()[0] == propertyType)) {
+                return m;
+            }
+        }
+        return null;
+    }
+
+    private static Method findValueOf(Class<?> type) {
+        try {
+            Method m = type.getMethod("valueOf", String.class);
+            return Modifier.isStatic(m.getModifiers()) && type.isAssignableFrom(m.getReturnType()) ? m : null;
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    private static Method findMethod(Class<?> type, String name, int nparam, boolean isStatic) {
+        for (Method m : type.getMethods()) {
+            if (m.getName().equals(name) && m.getParameterCount() == nparam
+                    && Modifier.isStatic(m.getModifiers()) == isStatic) {
+                return m;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isFx(org.w3c.dom.Node node) {
+        String uri = node.getNamespaceURI();
+        return uri != null && uri.startsWith("http://javafx.com/fxml");
+    }
+
+    private static boolean isPropertyElement(Element element) {
+        String name = element.getLocalName();
+        int dot = name.lastIndexOf('.');
+        return Character.isLowerCase(name.charAt(0)) && dot < 0
+                || dot > 0 && dot < name.length() - 1
+                && Character.isUpperCase(name.charAt(0)) && Character.isLowerCase(name.charAt(dot + 1));
+    }
+
+    private static boolean hasChildElements(Element element) {
+        for (org.w3c.dom.Node n = element.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n instanceof Element) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,251 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.appreflector.common;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide cache of {@code FXMLTemplate}s keyed by a hash of the
+ * normalized FXML.
+ *
+ * <p>
+ * Pages typically embed, or open windows from, the same FXML many times. The
+ * first load of a document compiles a template that is retained here; later
+ * loads of byte-for-byte equivalent FXML build their scene graphs from that
+ * template. The cache is bounded and evicts the least recently used template
+ * when full.
+ * </p>
+ * <p>
+ * The shared instance is available from JavaScript through
+ * {@code FXWebApp.getTemplateCache()} e.g. to read the hit and miss counts.
+ * </p>
+ *
+ * @author ML
+ */
+public final class FXMLTemplateCache {
+
+    /**
+     * The default maximum number of templates retained.
+     */
+    public static final int DEFAULT_MAXIMUM_SIZE = 32;
+
+    private static final FXMLTemplateCache DEFAULT = new FXMLTemplateCache(DEFAULT_MAXIMUM_SIZE);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong unreplayable = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private int maximumSize;
+
+    private final LinkedHashMap<String, FXMLTemplate> templates = new LinkedHashMap<String, FXMLTemplate>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FXMLTemplate> eldest) {
+            if (size() > maximumSize) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    FXMLTemplateCache(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * @return the process-wide cache
+     */
+    public static FXMLTemplateCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the template for the supplied FXML, compiling and caching it if
+     * it is not already present.
+     *
+     * @param fxml fully-formed FXML i.e. including its header
+     * @return the template
+     */
+    FXMLTemplate get(String fxml) {
+        String normalized = normalize(fxml);
+        return get(normalized, hash(normalized));
+    }
+
+    /**
+     * Returns the template for FXML that has already been normalized and
+     * hashed.
+     *
+     * @param normalized the FXML as returned by {@code normalize}
+     * @param hash the hash of the normalized FXML
+     * @return the template
+     */
+    FXMLTemplate get(String normalized, String hash) {
+        FXMLTemplate template;
+        synchronized (templates) {
+            template = templates.get(hash);
+        }
+        if (template != null) {
+            if (template.isReplayable()) {
+                hits.incrementAndGet();
+            } else {
+                unreplayable.incrementAndGet();
+            }
+            return template;
+        }
+        misses.incrementAndGet();
+        // Compile outside the lock - two threads may race to compile the same
+        // document, in which case the first one stored wins.
+        template = FXMLTemplate.compile(normalized, hash);
+        synchronized (templates) {
+            FXMLTemplate existing = templates.get(hash);
+            if (existing != null) {
+                return existing;
+            }
+            templates.put(hash, template);
+        }
+        return template;
+    }
+
+    /**
+     * @return the number of loads whose scene graph was built from a cached
+     * template
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of loads that required the FXML to be compiled
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of loads of cached FXML that the template can not
+     * replay, which are parsed by the {@code FXMLLoader} each time
+     */
+    public long getUnreplayable() {
+        return unreplayable.get();
+    }
+
+    /**
+     * @return the number of templates evicted to keep within the maximum size
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the number of templates presently cached
+     */
+    public int size() {
+        synchronized (templates) {
+            return templates.size();
+        }
+    }
+
+    /**
+     * @return the maximum number of templates retained
+     */
+    public int getMaximumSize() {
+        synchronized (templates) {
+            return maximumSize;
+        }
+    }
+
+    /**
+     * Sets the maximum number of templates retained, evicting the least
+     * recently used templates if the cache presently exceeds it.
+     *
+     * @param maximumSize the new maximum (values below 0 are treated as 0,
+     * which disables caching)
+     */
+    public void setMaximumSize(int maximumSize) {
+        synchronized (templates) {
+            this.maximumSize = Math.max(0, maximumSize);
+            while (templates.size() > this.maximumSize) {
+                templates.remove(templates.keySet().iterator().next());
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes all templates. The counters are not reset.
+     */
+    public void clear() {
+        synchronized (templates) {
+            templates.clear();
+        }
+    }
+
+    /**
+     * Normalizes FXML before hashing so that documents differing only in line
+     * endings or surrounding white space share a template.
+     *
+     * @param fxml the FXML
+     * @return the normalized FXML
+     */
+    static String normalize(String fxml) {
+        return fxml.replace("\r\n", "\n").replace('\r', '\n').trim();
+    }
+
+    /**
+     * Returns the hex encoded SHA-256 hash of the supplied (normalized) FXML.
+     *
+     * @param fxml the FXML
+     * @return the hash
+     */
+    static String hash(String fxml) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(fxml.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            // SHA-256 is required of every Java platform
+            throw new IllegalStateException(ex);
+        }
+    }
+}
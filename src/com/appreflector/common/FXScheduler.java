@@ -0,0 +1,509 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.appreflector.common;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import javafx.application.Platform;
+
+/**
+ * A prioritised queue of work for the JavaFX Platform thread.
+ *
+ * <p>
+ * Work posted by {@code FXWebApp} and the default controller - callbacks to
+ * the host, {@code runFX}, showing and closing windows, initialising
+ * controllers and creating windows - is queued here in one of four lanes
+ * rather than directly with {@code Platform.runLater}. The lanes are drained
+ * in priority order: {@code LIFECYCLE}, {@code INPUT}, {@code RENDER}, then
+ * {@code BACKGROUND}. Tasks in a lane run in the order posted. Each drain
+ * runs for at most the time budget, after which the scheduler yields so
+ * that a pulse may run, and resumes afterwards.
+ * </p>
+ * <p>
+ * Starting, showing and closing windows, initialising controllers,
+ * installing property subscriptions and the work requested by
+ * {@code runFX}, {@code runAsyncFX}, {@code runAndWaitFX} and
+ * {@code runAndGoFX} all go to the {@code LIFECYCLE} lane, so they run in
+ * the order in which they were requested and are never overtaken by
+ * callbacks, batched or not, which go to the {@code INPUT} lane, or by
+ * {@code applyUpdates}, which goes to the {@code RENDER} lane.
+ * </p>
+ * <p>
+ * Lanes are unbounded unless given a capacity. When a task is posted to a
+ * full lane, the lane's {@code OverflowPolicy} applies:
+ * </p>
+ * <ul>
+ * <li><strong>REJECT</strong> - the new task is refused with a
+ * {@code RejectedExecutionException}. This is the default.</li>
+ * <li><strong>COALESCE</strong> - a task posted with a key replaces any
+ * queued task with the same key, whether or not the lane is full; otherwise
+ * as {@code REJECT}</li>
+ * <li><strong>DROP_OLDEST</strong> - the oldest task in the lane is
+ * discarded</li>
+ * </ul>
+ * <p>
+ * A task discarded or replaced without running is reported to the
+ * {@code onDropped} handler it was posted with, if any, so that callers
+ * waiting on it can be released.
+ * </p>
+ * <p>
+ * The depth, wait times and counts of each lane are available from
+ * {@code getLane}, e.g. from JavaScript:<br>
+ * {@code app.getScheduler().getLane("INPUT").getDepth();}
+ * </p>
+ *
+ * @author ML
+ */
+public final class FXScheduler {
+
+    /**
+     * The lanes in priority order.
+     */
+    public enum Priority {
+
+        /**
+         * Window and controller lifecycle, and work requested by the host,
+         * in the order requested.
+         */
+        LIFECYCLE,
+        /**
+         * Responses to user input, such as callbacks.
+         */
+        INPUT,
+        /**
+         * Updates of the scene graph.
+         */
+        RENDER,
+        /**
+         * Work that may wait.
+         */
+        BACKGROUND
+    }
+
+    /**
+     * What to do with a task posted to a full lane.
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * Discard the oldest task in the lane.
+         */
+        DROP_OLDEST,
+        /**
+         * Replace a queued task with the same key, otherwise refuse the new
+         * task.
+         */
+        COALESCE,
+        /**
+         * Refuse the new task.
+         */
+        REJECT
+    }
+
+    /**
+     * The default capacity of each lane: unbounded.
+     */
+    public static final int DEFAULT_CAPACITY = Integer.MAX_VALUE;
+
+    private static final FXScheduler DEFAULT = new FXScheduler();
+
+    private static final class Task {
+
+        private final Object key;
+        private Runnable runnable;
+        private Runnable onDropped;
+        private long queued;
+
+        private Task(Object key, Runnable runnable, Runnable onDropped) {
+            this.key = key;
+            this.runnable = runnable;
+            this.onDropped = onDropped;
+            this.queued = System.nanoTime();
+        }
+    }
+
+    /**
+     * The queue, configuration and statistics of one lane.
+     */
+    public final class Lane {
+
+        private final Priority priority;
+        private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        private final HashMap<Object, Task> keyed = new HashMap<>();
+        private final LatencyHistogram waitTime = new LatencyHistogram();
+        private volatile int capacity = DEFAULT_CAPACITY;
+        private volatile OverflowPolicy overflowPolicy;
+        private volatile int maxDepth;
+        private volatile long submitted;
+        private volatile long executed;
+        private volatile long dropped;
+        private volatile long coalesced;
+        private volatile long rejected;
+
+        private Lane(Priority priority, OverflowPolicy overflowPolicy) {
+            this.priority = priority;
+            this.overflowPolicy = overflowPolicy;
+        }
+
+        private Task poll() {
+            Task task = tasks.poll();
+            if (task != null && task.key != null && keyed.get(task.key) == task) {
+                keyed.remove(task.key);
+            }
+            return task;
+        }
+
+        /**
+         * @return the priority of the lane
+         */
+        public Priority getPriority() {
+            return priority;
+        }
+
+        /**
+         * @return the maximum number of queued tasks
+         */
+        public int getCapacity() {
+            return capacity;
+        }
+
+        /**
+         * Sets the maximum number of queued tasks. Tasks already queued
+         * beyond a reduced capacity are kept.
+         *
+         * @param capacity the capacity - at least 1
+         */
+        public void setCapacity(int capacity) {
+            this.capacity = Math.max(1, capacity);
+        }
+
+        /**
+         * @return the policy applied when a task is posted to the full lane
+         */
+        public OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        /**
+         * Sets the policy applied when a task is posted to the full lane.
+         *
+         * @param overflowPolicy the policy
+         */
+        public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+            if (overflowPolicy == null) {
+                throw new IllegalArgumentException("overflowPolicy");
+            }
+            this.overflowPolicy = overflowPolicy;
+        }
+
+        /**
+         * Sets the policy applied when a task is posted to the full lane, by
+         * name, e.g. from JavaScript.
+         *
+         * @param overflowPolicy "DROP_OLDEST", "COALESCE" or "REJECT"
+         */
+        public void setOverflowPolicy(String overflowPolicy) {
+            setOverflowPolicy(OverflowPolicy.valueOf(overflowPolicy));
+        }
+
+        /**
+         * @return the number of queued tasks
+         */
+        public int getDepth() {
+            synchronized (FXScheduler.this) {
+                return tasks.size();
+            }
+        }
+
+        /**
+         * @return the greatest number of tasks queued at once
+         */
+        public int getMaxDepth() {
+            return maxDepth;
+        }
+
+        /**
+         * @return the number of tasks posted
+         */
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        /**
+         * @return the number of tasks run
+         */
+        public long getExecuted() {
+            return executed;
+        }
+
+        /**
+         * @return the number of tasks discarded because the lane was full
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * @return the number of tasks replaced by a later task with the same
+         * key
+         */
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        /**
+         * @return the number of tasks refused because the lane was full
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * @return the histogram of the time tasks waited in the lane
+         */
+        public LatencyHistogram getWaitTime() {
+            return waitTime;
+        }
+
+        @Override
+        public String toString() {
+            return priority + "{depth=" + getDepth() + ", maxDepth=" + maxDepth + ", submitted=" + submitted
+                    + ", executed=" + executed + ", dropped=" + dropped + ", coalesced=" + coalesced
+                    + ", rejected=" + rejected + ", wait=" + waitTime + "}";
+        }
+    }
+
+    private final EnumMap<Priority, Lane> lanes = new EnumMap<>(Priority.class);
+    private volatile long budgetNanos = TimeUnit.MILLISECONDS.toNanos(8);
+    private boolean scheduled;
+    private volatile long drains;
+    private volatile long yields;
+
+    private FXScheduler() {
+        lanes.put(Priority.LIFECYCLE, new Lane(Priority.LIFECYCLE, OverflowPolicy.COALESCE));
+        lanes.put(Priority.INPUT, new Lane(Priority.INPUT, OverflowPolicy.REJECT));
+        lanes.put(Priority.RENDER, new Lane(Priority.RENDER, OverflowPolicy.COALESCE));
+        lanes.put(Priority.BACKGROUND, new Lane(Priority.BACKGROUND, OverflowPolicy.REJECT));
+    }
+
+    /**
+     * Returns the scheduler for the Platform thread.
+     *
+     * @return the scheduler
+     */
+    public static FXScheduler getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param priority the priority of the lane
+     * @return the lane
+     */
+    public Lane getLane(Priority priority) {
+        return lanes.get(priority);
+    }
+
+    /**
+     * @param priority the name of the priority of the lane - "LIFECYCLE",
+     * "INPUT", "RENDER" or "BACKGROUND"
+     * @return the lane
+     */
+    public Lane getLane(String priority) {
+        return lanes.get(Priority.valueOf(priority));
+    }
+
+    /**
+     * @return the time budget of each drain in milliseconds
+     */
+    public long getBudget() {
+        return TimeUnit.NANOSECONDS.toMillis(budgetNanos);
+    }
+
+    /**
+     * Sets the time for which queued tasks are run before yielding to let a
+     * pulse run.
+     *
+     * @param millis the budget in milliseconds - at least 1
+     */
+    public void setBudget(long millis) {
+        budgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, millis));
+    }
+
+    /**
+     * @return the number of times queued tasks have been run
+     */
+    public long getDrainCount() {
+        return drains;
+    }
+
+    /**
+     * @return the number of drains that exhausted the time budget and yielded
+     */
+    public long getYieldCount() {
+        return yields;
+    }
+
+    /**
+     * Queues a task for the Platform thread.
+     *
+     * @param priority the lane
+     * @param task the task
+     * @throws RejectedExecutionException if the lane is full and its policy
+     * is {@code REJECT} or {@code COALESCE}
+     */
+    public void post(Priority priority, Runnable task) {
+        post(priority, null, task);
+    }
+
+    /**
+     * Queues a task for the Platform thread. If the lane's policy is
+     * {@code COALESCE}, the task replaces any queued task with the same key,
+     * taking its place in the queue.
+     *
+     * @param priority the lane
+     * @param key the key, or null
+     * @param task the task
+     * @throws RejectedExecutionException if the lane is full and its policy
+     * is {@code REJECT} or {@code COALESCE}
+     */
+    public void post(Priority priority, Object key, Runnable task) {
+        post(priority, key, task, null);
+    }
+
+    /**
+     * Queues a task for the Platform thread, as {@code post(priority, key,
+     * task)}, with a handler run if the task is discarded by
+     * {@code DROP_OLDEST} or replaced by a later task with the same key
+     * before it runs. The handler runs on the thread posting the task that
+     * displaced it.
+     *
+     * @param priority the lane
+     * @param key the key, or null
+     * @param task the task
+     * @param onDropped the handler, or null
+     * @throws RejectedExecutionException if the lane is full and its policy
+     * is {@code REJECT} or {@code COALESCE}
+     */
+    public void post(Priority priority, Object key, Runnable task, Runnable onDropped) {
+        Lane lane = lanes.get(priority);
+        boolean schedule;
+        Runnable dropped = null;
+        synchronized (this) {
+            lane.submitted++;
+            OverflowPolicy policy = lane.overflowPolicy;
+            Task queued = key != null && policy == OverflowPolicy.COALESCE ? lane.keyed.get(key) : null;
+            if (queued != null) {
+                // Take the place of the queued task, which is already scheduled
+                dropped = queued.onDropped;
+                queued.runnable = task;
+                queued.onDropped = onDropped;
+                lane.coalesced++;
+                schedule = false;
+            } else {
+                if (lane.tasks.size() >= lane.capacity) {
+                    if (policy != OverflowPolicy.DROP_OLDEST) {
+                        lane.rejected++;
+                        throw new RejectedExecutionException(priority + " lane is full");
+                    }
+                    dropped = lane.poll().onDropped;
+                    lane.dropped++;
+                }
+                Task t = new Task(key, task, onDropped);
+                lane.tasks.add(t);
+                if (key != null) {
+                    lane.keyed.put(key, t);
+                }
+                lane.maxDepth = Math.max(lane.maxDepth, lane.tasks.size());
+                schedule = !scheduled;
+                scheduled = true;
+            }
+        }
+        if (dropped != null) {
+            dropped.run();
+        }
+        if (schedule) {
+            Platform.runLater(this::drain);
+        }
+    }
+
+    private void drain() {
+        drains++;
+        long start = System.nanoTime();
+        while (true) {
+            Lane lane = null;
+            Task task = null;
+            synchronized (this) {
+                for (Lane l : lanes.values()) {
+                    task = l.poll();
+                    if (task != null) {
+                        lane = l;
+                        break;
+                    }
+                }
+                if (task == null) {
+                    scheduled = false;
+                    return;
+                }
+            }
+            long now = System.nanoTime();
+            lane.waitTime.record(now - task.queued);
+            lane.executed++;
+            try {
+                task.runnable.run();
+            } catch (Throwable ex) {
+                // Errors too: one escaping would leave the drain scheduled but never run
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, ex);
+            }
+            if (System.nanoTime() - start >= budgetNanos) {
+                yields++;
+                // Still scheduled: resume after any pending pulse
+                Platform.runLater(this::drain);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FXScheduler{budget=" + getBudget() + "ms, drains=" + drains + ", yields=" + yields
+                + ", lanes=" + lanes.values() + "}";
+    }
+}
@@ -35,19 +35,26 @@
  */
 package com.appreflector.common;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javafx.application.Application;
 import javafx.application.Platform;
-import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.ProgressIndicator;
@@ -140,6 +147,13 @@ import netscape.javascript.JSObject;
  * string can be changed by calling the {@code setData} method on the application.</li>
  * <li><strong>callbacks</strong> - the name of the JavaScript object in the
  * host context containing the callbacks (if any).</li>
+ * <li><strong>async</strong> - optional. If "true", the FXML is loaded on a
+ * background thread while the progress indicator keeps animating. The loaded
+ * scene graph replaces the indicator when ready.</li>
+ * <li><strong>onload</strong> - optional. The name of a function in the host
+ * context to call, on the JavaFX Platform thread, when loading completes. It
+ * receives the application and an error message (null on success) as
+ * arguments.</li>
  * </ul>
  * <br>
  * <em><strong>Use with the accompanying JavaScript code</strong></em>
@@ -374,7 +388,10 @@ import netscape.javascript.JSObject;
  * <li> The value associated with this node's key in the
  * {@code LinkedHashMap<String, Object>}</li>
  * <li> The data string that was supplied as a parameter to the {@code start}
- * method or by a subsequent call the {@code FXWebApp setData} method.</li>
+ * method or by a subsequent call the {@code FXWebApp setData} method. If
+ * delta delivery is enabled with {@code setDeltaDelivery}, a
+ * {@code DataDelta} holding the keys of the {@code VersionedDataStore}
+ * changed since the last call of that callback instead.</li>
  * </ol>
  * When callbacks are shared because two or more nodes share an id the third
  * argument will be common to each of those objects.
@@ -420,7 +437,9 @@ import netscape.javascript.JSObject;
  * that created them. A list of owned {@code FXWebWindow}s for an embedded
  * application can be retrieved with:<br>
  * {@code getElementById(appName).getOwnedWindows()}<br>
- * which returns an ArrayList.
+ * which returns an ArrayList snapshot of the windows presently open. Windows
+ * are removed from the list when closed, and added again if shown again. See
+ * {@code getWindowRegistry} for the counts of open and opened windows.
  * </p>
  *
  * <p>
@@ -449,8 +468,10 @@ import netscape.javascript.JSObject;
  * will return a {@code Set<Node>} listing all nodes with the specified CSS
  * class name.<br><br>
  * {@code lookup} is shorthand for {@code getRoot().lookup}
- * while {{@code lookupAll} is short for {@code getRoot().lookupAll}. To search
- * from the {@code Scene}, use {@code getScene().lookup}.<br>
+ * while {{@code lookupAll} is short for {@code getRoot().lookupAll}, except
+ * that plain "#id" selectors are answered from an index of node ids (see
+ * {@code getNodeIndex}) and other simple selectors are compiled and cached. To
+ * search from the {@code Scene}, use {@code getScene().lookup}.<br>
  *
  * Java methods my be invoked from JavaScript on these references e.g.:<br><br>
  * {@code var button = document.getElementById(appName).lookup(#myButton);}<br>
@@ -522,6 +543,20 @@ import netscape.javascript.JSObject;
  * blocks until the task completes (or is canceled) and returns the
  * result<br><br>
  *
+ * <p>
+ * Rather than blocking, or polling a {@code FutureTask}, prefer
+ * {@code runAsyncFX}. It returns a {@code CompletableFuture} and, optionally,
+ * calls a JavaScript function with the result, or an error message, when the
+ * callback completes. A timeout may be given, and the future may be
+ * cancelled, which skips the callback if it has not yet started:<br><br>
+ * {@code app.runAsyncFX(function(args, future)}{<br>
+ * {@code return app.lookup(args[0]).getText();}<br>
+ * }, {@code ["#myButton"], 1000, function(result, error)}{<br>
+ * {@code console.log(error || result);}<br> }) ;<br><br>
+ * When called on the Platform thread, the {@code runAndWaitFX} and
+ * {@code runAsyncFX} methods run the callback inline.
+ * </p>
+ *
  * <em><strong>Use {@code runFX}, {@code runAndWaitFX} and {@code runAndGoFX}
  * methods only when needed as they use the JavaFX Platform thread. Potentially
  * lengthy operations such as file I/O or HTTP requests should be avoided in
@@ -535,6 +570,9 @@ import netscape.javascript.JSObject;
  * <br>
  * A host utilities instance can be retrieved by call the {@code getUtils} method
  * of the application. It can be set by calling {@code setUtils("className")}.
+ * Several utilities can be used at once by name, with
+ * {@code getUtil("name")}, after registering their classes with
+ * {@code getUtilities().register("name", "className")}. Each is created once.
  * <br>
  * Custom host utility classes can therefore be added to the Java code if it is
  * recompiled. The following assumptions are made, EITHER:
@@ -573,14 +611,112 @@ public class FXWebApp extends Application {
     private String fxml;
     private FXWebAppControllerInterface controller;
     private String callbacks = null;
-    private String data;
+
+    /**
+     * Keyed, versioned data, including the data string under
+     * {@code VersionedDataStore.DATA}.
+     */
+    private final VersionedDataStore dataStore = new VersionedDataStore();
+
+    /**
+     * If true, callbacks receive a {@code DataDelta} rather than the data
+     * string.
+     */
+    private volatile boolean deltaDelivery = false;
+
+    /**
+     * Named buffers of binary data filled by the host.
+     */
+    private final BinaryChannel binaryChannel = new BinaryChannel();
+
+    /**
+     * Applies bulk property updates from the host.
+     */
+    private final SceneUpdater sceneUpdater = new SceneUpdater(this);
+
+    /**
+     * Closed windows and pre-created stages kept for reuse.
+     */
+    private final WindowPool windowPool = new WindowPool(this);
+
+    /**
+     * Active property subscriptions.
+     */
+    private final CopyOnWriteArrayList<PropertySubscription> subscriptions = new CopyOnWriteArrayList<>();
     private final LinkedHashMap<String, Object> callbackObjectMap = new LinkedHashMap();
 
     /**
-     * A list of {@code FXWebWindows} owned by this {@code FXWebApp} instance.
+     * Index of the nodes below the root by id - see {@code getNodeIndex}.
+     * Built and replaced only on the Platform thread.
+     */
+    private volatile NodeIndex nodeIndex;
+
+    /**
+     * If true, nodes added to or removed from the graph after the controller
+     * is initialised are wired or unwired individually.
+     */
+    private volatile boolean incrementalWiring = false;
+
+    /**
+     * Coalesces high-frequency value callbacks when enabled.
+     */
+    private final CoalescingDispatcher coalescingDispatcher = new CoalescingDispatcher();
+
+    /**
+     * Delivers callbacks to the host in batches when enabled.
+     */
+    private final BatchDispatcher batchDispatcher = new BatchDispatcher(this);
+
+    /**
+     * The policy used to deliver callbacks for nodes without their own.
+     */
+    private volatile DispatchPolicy dispatchPolicy = DispatchPolicy.DEFERRED;
+
+    /**
+     * The latency from event to callback for each dispatch policy.
+     */
+    private final EnumMap<DispatchPolicy, LatencyHistogram> dispatchLatency = new EnumMap<>(DispatchPolicy.class);
+
+    {
+        for (DispatchPolicy policy : DispatchPolicy.values()) {
+            dispatchLatency.put(policy, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Counters and latency histograms for this instance.
+     */
+    private final FXWebAppMetrics metrics = new FXWebAppMetrics(dispatchLatency.get(DispatchPolicy.DEFERRED));
+
+    /**
+     * Completed, on the Platform thread, once the root defined by the FXML is
+     * in place.
+     */
+    private final CompletableFuture<Pane> loaded = new CompletableFuture<>();
+
+    /**
+     * Background threads used to load FXML in asynchronous mode.
+     */
+    private static final ExecutorService LOADER = Executors.newCachedThreadPool((Runnable r) -> {
+        Thread thread = new Thread(r, "FXWebApp loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Times out {@code runAsyncFX} requests.
+     */
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+        Thread thread = new Thread(r, "FXWebApp timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The {@code FXWebWindows} owned by this {@code FXWebApp} instance.
      *
      */
-    private final ArrayList<FXWebWindow> ownedWindows = new ArrayList<>();
+    private final WindowRegistry ownedWindows = new WindowRegistry();
 
     /**
      * This contains a reference to a user-defined class that implements the
@@ -589,6 +725,26 @@ public class FXWebApp extends Application {
      */
     private HostUtilitiesInterface hostUtilities;
 
+    /**
+     * Named host utilities, created on first use.
+     */
+    private final HostUtilityRegistry utilities = new HostUtilityRegistry(this);
+
+    /**
+     * Named operations invoked by the host through a single entry point.
+     */
+    private final CommandBus commandBus = new CommandBus(this);
+
+    /**
+     * True once {@code dispose} has been called.
+     */
+    private volatile boolean disposed = false;
+
+    /**
+     * The host context set in place of the web context, or null.
+     */
+    private volatile JSObject hostContext;
+
     /**
      * This is the default header that will be applied <em>only</em> when the
      * supplied FXML lacks one.
@@ -607,14 +763,48 @@ public class FXWebApp extends Application {
             + "<?import javafx.scene.layout.*?>"
             + "<?import javafx.collections.*?>";
 
+    /**
+     * Prefixes the default header to FXML that lacks one.
+     *
+     * @param fxml short-form or fully-formed FXML
+     * @return fully-formed FXML
+     */
+    static String withDefaultHeader(String fxml) {
+        FXWebAppEvents.HeaderSynthesis event = FXWebAppEvents.headerSynthesis();
+        boolean added = !fxml.startsWith("<?xml");
+        String s = added ? defaultFxmlHeader.concat(fxml) : fxml;
+        if (FXWebAppEvents.ended(event)) {
+            event.length = s.length();
+            event.added = added;
+            event.commit();
+        }
+        return s;
+    }
+
     @Override
     public void start(Stage primaryStage) {
+        start(primaryStage, getParameters().getNamed());
+    }
+
+    /**
+     * Starts this instance with the given named parameters, rather than those
+     * passed by the host page.
+     *
+     * This is how {@code HeadlessLauncher} starts an instance outside a
+     * browser.
+     *
+     * @param primaryStage the stage
+     * @param parameters the named parameters, as for {@code start}
+     */
+    void start(Stage primaryStage, Map<String, String> parameters) {
+
+        metrics.register();
 
         //hostUtilities = new HostUtilities(this);
         Scene scene;
 
         // The FXML to embed as a String
-        String s = getParameters().getNamed().get("fxml");
+        String s = parameters.get("fxml");
 
         if (s == null || s.isEmpty()) {
             Text text = new Text("The calling JavaScript has not provided the parameters needed by FXWebApp");
@@ -623,26 +813,27 @@ public class FXWebApp extends Application {
             scene = new Scene(root);
             primaryStage.setScene(scene);
             primaryStage.show();
+            loaded.complete(root);
             return;
         }
 
         // Data object
-        data = getParameters().getNamed().get("data");
+        setData(parameters.get("data"));
 
         // Name of the host context member defining any JavaScript callbacks
         // to invoke from the controller
-        callbacks = getParameters().getNamed().get("callbacks");
+        callbacks = parameters.get("callbacks");
 
         // Set the width and height
         double w;
         double h;
         try {
-            w = Double.parseDouble(getParameters().getNamed().get("w"));
+            w = Double.parseDouble(parameters.get("w"));
         } catch (Exception ex) {
             w = 400;
         }
         try {
-            h = Double.parseDouble(getParameters().getNamed().get("h"));
+            h = Double.parseDouble(parameters.get("h"));
         } catch (Exception ex) {
             h = 300;
         }
@@ -657,28 +848,17 @@ public class FXWebApp extends Application {
         primaryStage.show();
 
         // Add the default header if one has not been provided
-        if (!s.startsWith("<?xml")) {
-            s = defaultFxmlHeader.concat(s);
-        }
+        s = withDefaultHeader(s);
         fxml = s;
-        FXMLLoader loader = new FXMLLoader();
 
         controller = new FXWebAppController();
-        loader.setController(controller);
-
-        InputStream stream = new ByteArrayInputStream(fxml.getBytes());
-        try {
-            root = loader.load(stream);
-        } catch (IOException ex) {
-            root.getChildren().add(new Text("FXWebApp.java encountered and error: " + ex.getMessage()));
-        }
 
-        scene.setRoot(root);
-
-        root.requestLayout();
+        load(scene, Boolean.parseBoolean(parameters.get("async")),
+                parameters.get("onload"));
 
         primaryStage.setOnCloseRequest((WindowEvent event) -> {
-            ownedWindows.stream().forEach((FXWebWindow window) -> {
+            // Closing may return windows to, or discard them from, the pool
+            ownedWindows.snapshot().stream().forEach((FXWebWindow window) -> {
                 if (window.getStage().isShowing()) {
                     window.getStage().close();
                 }
@@ -687,6 +867,144 @@ public class FXWebApp extends Application {
 
     }
 
+    /**
+     * Loads the FXML for this instance and installs the resulting root in the
+     * supplied scene, replacing the temporary progress display.
+     *
+     * In asynchronous mode the scene graph is built on a background thread
+     * and swapped in on the Platform thread, so the Platform thread stays free
+     * to animate the progress indicator while the FXML is loaded.
+     *
+     * @param scene the scene, presently showing the progress display
+     * @param async true to load on a background thread
+     * @param onload name of a host context function to notify on completion,
+     * or null
+     */
+    void load(Scene scene, boolean async, String onload) {
+        final Pane placeholder = (Pane) scene.getRoot();
+        final String s = fxml;
+        final FXWebAppControllerInterface c = controller;
+        if (!async) {
+            String error = null;
+            long start = System.nanoTime();
+            try {
+                setRoot(loadRoot(s, c));
+            } catch (IOException | RuntimeException ex) {
+                // As for an asynchronous load, so that loaded always completes
+                error = ex.getMessage() == null ? ex.toString() : ex.getMessage();
+            }
+            metrics.loaded(System.nanoTime() - start, error != null);
+            installRoot(scene, placeholder, error, onload);
+            return;
+        }
+        LOADER.execute(() -> {
+            String error = null;
+            long start = System.nanoTime();
+            try {
+                Pane pane = loadRoot(s, c);
+                metrics.loaded(System.nanoTime() - start, false);
+                Platform.runLater(() -> {
+                    setRoot(pane);
+                    installRoot(scene, placeholder, null, onload);
+                });
+            } catch (IOException | RuntimeException ex) {
+                error = ex.getMessage() == null ? ex.toString() : ex.getMessage();
+                metrics.loaded(System.nanoTime() - start, true);
+            }
+            if (error != null) {
+                final String message = error;
+                Platform.runLater(() -> {
+                    installRoot(scene, placeholder, message, onload);
+                });
+            }
+        });
+    }
+
+    private void installRoot(Scene scene, Pane placeholder, String error, String onload) {
+        if (error == null) {
+            scene.setRoot(root);
+            root.requestLayout();
+        } else {
+            placeholder.getChildren().add(new Text("FXWebApp.java encountered and error: " + error));
+            root = placeholder;
+        }
+        // Index here, on the Platform thread, so that lookups from the host only read it
+        getNodeIndex();
+        loaded.complete(root);
+        if (onload != null && !onload.isEmpty()) {
+            JSObject context = getHostContext();
+            if (context != null) {
+                context.call(onload, new Object[]{this, error});
+            }
+        }
+    }
+
+    /**
+     * Tests if the FXML for this instance has been loaded.
+     *
+     * When loading asynchronously, {@code getRoot} returns the temporary
+     * progress display until this returns true.
+     *
+     * @return true once the scene graph is in place (or loading has failed)
+     */
+    public boolean isLoaded() {
+        return loaded.isDone();
+    }
+
+    /**
+     * @return a future completed with the root once the FXML for this
+     * instance has been loaded (or loading has failed)
+     */
+    CompletableFuture<Pane> whenLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Builds the scene graph for fully-formed FXML.
+     *
+     * If an {@code FXMLBuilder} generated by the {@code FXMLCompiler} is
+     * registered for the FXML, it is used and the FXML is not parsed at all.
+     * Otherwise, the FXML is parsed only the first time it is seen: the
+     * resulting template is held in the shared {@code FXMLTemplateCache} and
+     * reused by every later load of the same FXML, whether to embed an
+     * application or to create a window.
+     *
+     * @param fxml the FXML, including its header
+     * @param controller the controller for the FXMLLoader when the FXML can
+     * not be replayed from a template
+     * @return the root node
+     * @throws IOException if the FXML can not be loaded
+     */
+    static Pane loadRoot(String fxml, FXWebAppControllerInterface controller) throws IOException {
+        FXWebAppEvents.FXMLParse event = FXWebAppEvents.fxmlParse();
+        String normalized = FXMLTemplateCache.normalize(fxml);
+        String hash = FXMLTemplateCache.hash(normalized);
+        FXMLBuilder builder = FXMLBuilderRegistry.get(hash);
+        boolean failed = true;
+        try {
+            Pane pane = builder != null ? builder.build()
+                    : FXMLTemplateCache.getDefault().get(normalized, hash).instantiate(controller);
+            failed = false;
+            return pane;
+        } finally {
+            if (FXWebAppEvents.ended(event)) {
+                event.length = fxml.length();
+                event.builder = builder != null;
+                event.failed = failed;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Returns the process-wide cache of parsed FXML templates.
+     *
+     * @return the template cache
+     */
+    public FXMLTemplateCache getTemplateCache() {
+        return FXMLTemplateCache.getDefault();
+    }
+
     /**
      * Method to initialise a {@code FXWebAppController} instance associated
      * with this {@code FXWebApp} instance.
@@ -707,10 +1025,16 @@ public class FXWebApp extends Application {
      * satisfied - false otherwise.
      */
     public boolean initController() {
+        if (disposed) {
+            return false;
+        }
         if (callbacks != null && !callbacks.isEmpty() && getHostContext() != null) {
-            Platform.runLater(() -> {
-                controller.initialize(this, callbacks);
-            });
+            // Wait for any asynchronous load to complete before wiring
+            loaded.thenRun(() -> FXScheduler.getDefault().post(FXScheduler.Priority.LIFECYCLE, () -> {
+                if (!disposed) {
+                    controller.initialize(this, callbacks);
+                }
+            }));
             return true;
         } else {
             callbacks = null;
@@ -748,6 +1072,23 @@ public class FXWebApp extends Application {
         }
     }
 
+    /**
+     * Re-reads the names of the callbacks defined in the host context object
+     * without re-initialising the controller.
+     *
+     * The default controller reads the callback names once per
+     * initialisation. Call this after adding or removing callbacks if nodes
+     * will subsequently be wired without calling {@code initController}.
+     * Has no effect with other controllers.
+     */
+    public void refreshCallbackNames() {
+        if (controller instanceof FXWebAppController) {
+            FXScheduler.getDefault().post(FXScheduler.Priority.LIFECYCLE, () -> {
+                ((FXWebAppController) controller).refreshCallbackNames();
+            });
+        }
+    }
+
     /**
      * Returns the name of the host context object containing the callbacks.
      *
@@ -839,6 +1180,166 @@ public class FXWebApp extends Application {
         return callbackObjectMap;
     }
 
+    /**
+     * Returns the dispatcher used to coalesce high-frequency value callbacks.
+     *
+     * Enable coalescing from JavaScript before initialising the controller
+     * e.g.:<br>
+     * {@code app.getCoalescingDispatcher().setEnabled(true);}<br>
+     * {@code app.getCoalescingDispatcher().setInterval(50);}<br>
+     * {@code app.initController();}
+     *
+     * @return the dispatcher
+     */
+    public CoalescingDispatcher getCoalescingDispatcher() {
+        return coalescingDispatcher;
+    }
+
+    /**
+     * Returns the dispatcher used to deliver callbacks to the host in batches.
+     *
+     * Batching is off by default. Enable it from JavaScript with:<br>
+     * {@code app.getBatchDispatcher().setEnabled(true);}<br>
+     * Callbacks are then delivered through the
+     * {@code fxdeploy$common.dispatchBatch} trampoline in fxdeploy-common.js
+     * unless another is set with {@code setTrampoline}.
+     *
+     * @return the dispatcher
+     */
+    public BatchDispatcher getBatchDispatcher() {
+        return batchDispatcher;
+    }
+
+    /**
+     * @return the policy used to deliver callbacks for nodes without their
+     * own
+     */
+    public DispatchPolicy getDispatchPolicy() {
+        return dispatchPolicy;
+    }
+
+    /**
+     * Sets the policy used to deliver callbacks for nodes without their own.
+     *
+     * @param policy the policy
+     */
+    public void setDispatchPolicy(DispatchPolicy policy) {
+        this.dispatchPolicy = policy == null ? DispatchPolicy.DEFERRED : policy;
+    }
+
+    /**
+     * Sets the policy used to deliver callbacks for nodes without their own,
+     * by name, e.g. from JavaScript:<br>
+     * {@code app.setDispatchPolicy("DIRECT");}
+     *
+     * @param policy the policy name - "DIRECT" or "DEFERRED"
+     */
+    public void setDispatchPolicy(String policy) {
+        DispatchPolicy p = DispatchPolicy.from(policy);
+        if (p == null) {
+            throw new IllegalArgumentException("Unknown dispatch policy: " + policy);
+        }
+        setDispatchPolicy(p);
+    }
+
+    /**
+     * Sets the policy used to deliver callbacks for the nodes matching a
+     * selector, overriding that of the app and any set through the callback
+     * object map. Must be called on the JavaFX Platform thread e.g.:<br>
+     * {@code app.runFX(function()}{<br>
+     * {@code app.setNodeDispatchPolicy("#myButton", "DIRECT");}<br> }) ;
+     *
+     * @param selector the selector
+     * @param policy the policy name, or null to clear the nodes' policy
+     */
+    public void setNodeDispatchPolicy(String selector, String policy) {
+        DispatchPolicy p = DispatchPolicy.from(policy);
+        if (p == null && policy != null) {
+            throw new IllegalArgumentException("Unknown dispatch policy: " + policy);
+        }
+        lookupAll(selector).stream().forEach((Node node) -> {
+            DispatchPolicy.set(node, p);
+        });
+    }
+
+    /**
+     * Returns the histogram of the latency from the raising of an event to
+     * the invocation of its callback, for callbacks delivered under a policy.
+     *
+     * @param policy the policy name - "DIRECT" or "DEFERRED"
+     * @return the histogram
+     */
+    public LatencyHistogram getDispatchLatency(String policy) {
+        DispatchPolicy p = DispatchPolicy.from(policy);
+        if (p == null) {
+            throw new IllegalArgumentException("Unknown dispatch policy: " + policy);
+        }
+        return dispatchLatency.get(p);
+    }
+
+    /**
+     * Returns the histogram of the latency from the raising of an event to
+     * the invocation of its callback, for callbacks delivered under a policy.
+     *
+     * @param policy the policy
+     * @return the histogram
+     */
+    public LatencyHistogram getDispatchLatency(DispatchPolicy policy) {
+        return dispatchLatency.get(policy);
+    }
+
+    /**
+     * Returns a snapshot of the metrics of this instance: FXML load time,
+     * controller wiring time and node count, event to callback latency, queue
+     * wait and the number of calls of each callback. Keys are dotted names,
+     * such as "call.p99" or "callback.button$callback", and latencies are in
+     * microseconds.
+     *
+     * Call from JavaScript as app.getMetrics().get("call.p99").
+     *
+     * @return the snapshot
+     */
+    public LinkedHashMap<String, Object> getMetrics() {
+        return metrics.getMetrics();
+    }
+
+    /**
+     * Returns the metrics of this instance, which are also published through
+     * JMX from when the instance starts until it is stopped or disposed.
+     *
+     * @return the metrics
+     */
+    public FXWebAppMetrics getAppMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Tests if incremental wiring is enabled.
+     *
+     * @return true if enabled
+     */
+    public boolean isIncrementalWiring() {
+        return incrementalWiring;
+    }
+
+    /**
+     * Enables or disables incremental wiring.
+     *
+     * When enabled, the controller watches the children of every
+     * {@code Parent} below the root after it is initialised. Nodes added to
+     * the graph are wired to their callbacks, and nodes removed from it are
+     * unwired, without revisiting the rest of the graph. If the callback
+     * object map was populated from the node ids, it is updated in place.
+     * Takes effect the next time the controller is initialised, e.g.:<br>
+     * {@code app.setIncrementalWiring(true);}<br>
+     * {@code app.initController();}
+     *
+     * @param incrementalWiring true to enable
+     */
+    public void setIncrementalWiring(boolean incrementalWiring) {
+        this.incrementalWiring = incrementalWiring;
+    }
+
     /**
      * @return the hostUtilities instance
      */
@@ -850,41 +1351,56 @@ public class FXWebApp extends Application {
         this.hostUtilities = instance;
     }
 
+    /**
+     * Sets the utility returned by {@code getUtil()}.
+     *
+     * The utility is taken from the {@code HostUtilityRegistry}, so is created
+     * once, on first use, and shared with {@code getUtil(name)}.
+     *
+     * @param name the registered name of the utility, or its class name -
+     * unqualified names are in the {@code com.appreflector.common} package
+     * @return "OK", or a description of the error
+     */
     public String setUtil(String name) {
-        if (!name.contains(".")) {
-            name = "com.appreflector.common.".concat(name);
-        }
-        Class clzz;
         try {
-            clzz = Class.forName(name);
-        } catch (ClassNotFoundException ex) {
-            return ex.toString();
+            setUtil(utilities.get(name));
+        } catch (IllegalArgumentException | ClassCastException ex) {
+            return ex.getMessage() == null ? ex.toString() : ex.getMessage();
         }
-        Constructor[] constructors = clzz.getDeclaredConstructors();
-        if (constructors.length > 0) {
-            int nparam = constructors[0].getParameterCount();
-            Object instance;
-            if (nparam == 1) {
-                try {
-                    instance = constructors[0].newInstance(this);
-                } catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
-                    return ex.toString();
-                }
-            } else {
-                try {
-                    instance = clzz.newInstance();
-                } catch (InstantiationException | IllegalAccessException ex) {
-                    return ex.toString();
-                }
-            }
-            if (instance instanceof HostUtilitiesInterface) {
-                setUtil((HostUtilitiesInterface) instance);
-            } else {
-                return "Not a valid HostUtilitiesInterface";
-            }
-            return "OK";
-        }
-        return "No constructors found ?!!";
+        return "OK";
+    }
+
+    /**
+     * Returns a named host utility, creating it on first use.
+     *
+     * @param name the registered name of the utility, or its class name -
+     * unqualified names are in the {@code com.appreflector.common} package
+     * @return the utility
+     * @throws IllegalArgumentException if the utility can not be created
+     */
+    public HostUtilitiesInterface getUtil(String name) {
+        return utilities.get(name);
+    }
+
+    /**
+     * Returns the command bus through which the host may invoke registered
+     * operations, singly or in batches, without a reflective LiveConnect call
+     * per operation, e.g.:<br>
+     * {@code app.getCommandBus().invokeBatch(fxdeploy$common.encodeCommands([["setData", [json]], ["applyUpdates", [ops]]]));}
+     *
+     * @return the command bus
+     */
+    public CommandBus getCommandBus() {
+        return commandBus;
+    }
+
+    /**
+     * Returns the registry of the named host utilities of this instance.
+     *
+     * @return the registry
+     */
+    public HostUtilityRegistry getUtilities() {
+        return utilities;
     }
 
     /**
@@ -901,7 +1417,8 @@ public class FXWebApp extends Application {
      * @return the data as a String
      */
     public String getData() {
-        return data;
+        Object data = dataStore.get(VersionedDataStore.DATA);
+        return data == null ? null : data.toString();
     }
 
     /**
@@ -915,17 +1432,273 @@ public class FXWebApp extends Application {
      * FXWebAppControllerInterface does not require the callbackObjectMap to be
      * supported.
      *
+     * The string is held in the {@code VersionedDataStore} under the key
+     * {@code VersionedDataStore.DATA}, so setting it counts as a change of
+     * that key.
+     *
      * @param data the data String
      */
     public void setData(String data) {
-        this.data = data;
+        FXWebAppEvents.SetData event = FXWebAppEvents.setData();
+        dataStore.patch(VersionedDataStore.DATA, data);
+        if (FXWebAppEvents.ended(event)) {
+            event.length = data == null ? 0 : data.length();
+            event.version = dataStore.getVersion();
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns the keyed, versioned data store of this app.
+     *
+     * Individual keys may be patched from JavaScript e.g.:<br>
+     * {@code app.getDataStore().patch("selection", "row42");}
+     *
+     * @return the data store
+     */
+    public VersionedDataStore getDataStore() {
+        return dataStore;
+    }
+
+    /**
+     * Applies many property updates in one pass on the JavaFX Platform
+     * thread, e.g. from JavaScript:<br>
+     * {@code app.applyUpdates(fxdeploy$common.encodeUpdates([}<br>
+     * {@code ["status", "text", "Ready"], ["progress", "progress", 0.5]]));}
+     * <br>
+     * See {@code SceneUpdater} for the encoding.
+     *
+     * @param ops the encoded updates
+     * @return the number of updates to apply
+     */
+    public int applyUpdates(String ops) {
+        return sceneUpdater.apply(ops, null);
+    }
+
+    /**
+     * Applies many property updates in one pass on the JavaFX Platform
+     * thread, then calls a function in the host context with the app, the
+     * number of updates applied, the number that failed and the time taken
+     * in microseconds.
+     *
+     * @param ops the encoded updates
+     * @param onApplied the name of the function to call
+     * @return the number of updates to apply
+     */
+    public int applyUpdates(String ops, String onApplied) {
+        return sceneUpdater.apply(ops, onApplied);
+    }
+
+    /**
+     * Subscribes a function in the host context to changes of a property of
+     * the nodes with an id, e.g. from JavaScript:<br>
+     * {@code var sub = app.subscribe("volume", "value", "onVolume", 50);}<br>
+     * {@code ...}<br>
+     * {@code sub.cancel();}<br>
+     * The function receives the node, the new value, the id and the property
+     * name, on the JavaFX Platform thread, at most once per minimum interval
+     * per node. The latest value is always delivered once the interval ends.
+     * Nodes later given the id are not subscribed.
+     *
+     * As for {@code initController}, the listeners are added once the FXML
+     * has loaded. A subscription that can not then be installed, because a
+     * node lacks the property, is cancelled.
+     *
+     * @param id the node id
+     * @param property the property name, or a path such as
+     * "selectionModel.selectedItem"
+     * @param callback the name of the function in the host context
+     * @param minInterval the minimum interval between deliveries in
+     * milliseconds
+     * @return the subscription
+     * @throws IllegalArgumentException if, when called on the Platform
+     * thread after the FXML has loaded, a node with the id lacks the property
+     */
+    public PropertySubscription subscribe(String id, String property, String callback, long minInterval) {
+        PropertySubscription subscription = new PropertySubscription(this, id, property, callback, minInterval);
+        if (Platform.isFxApplicationThread() && isLoaded()) {
+            subscription.install();
+        } else {
+            loaded.thenRun(() -> FXScheduler.getDefault().post(FXScheduler.Priority.LIFECYCLE, () -> {
+                try {
+                    subscription.install();
+                } catch (IllegalArgumentException ex) {
+                    subscription.cancel();
+                    throw ex;
+                }
+            }));
+        }
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Cancels a subscription.
+     *
+     * @param subscription the subscription
+     */
+    public void unsubscribe(PropertySubscription subscription) {
+        subscription.cancel();
+    }
+
+    /**
+     * @return the active subscriptions
+     */
+    public ArrayList<PropertySubscription> getSubscriptions() {
+        return new ArrayList<>(subscriptions);
+    }
+
+    void removeSubscription(PropertySubscription subscription) {
+        subscriptions.remove(subscription);
+    }
+
+    /**
+     * @return the updater applying {@code applyUpdates}, with its statistics
+     */
+    public SceneUpdater getSceneUpdater() {
+        return sceneUpdater;
+    }
+
+    /**
+     * Releases everything this instance has installed or retained, so that
+     * rebuilding a user interface does not accumulate memory.
+     *
+     * On the JavaFX Platform thread - immediately if called there - the
+     * owned windows are disposed and closed, property subscriptions are
+     * cancelled, the controller is disposed, removing the handlers and
+     * listeners it installed, and pending callbacks are discarded. The node
+     * index, callback object map, data store and binary slots are cleared
+     * and host references are dropped. The instance can not be initialised
+     * again afterwards. Calling this more than once has no further effect.
+     */
+    public void dispose() {
+        if (disposed) {
+            return;
+        }
+        disposed = true;
+        if (Platform.isFxApplicationThread()) {
+            disposeFX();
+        } else {
+            Platform.runLater(this::disposeFX);
+        }
+    }
+
+    /**
+     * Performs {@code dispose} on the Platform thread.
+     */
+    void disposeFX() {
+        metrics.unregister();
+        windowPool.setEnabled(false);
+        ownedWindows.snapshot().stream().forEach((FXWebWindow window) -> {
+            window.dispose();
+        });
+        subscriptions.stream().forEach((PropertySubscription subscription) -> {
+            subscription.cancel();
+        });
+        if (controller != null) {
+            controller.dispose();
+        }
+        coalescingDispatcher.dispose();
+        batchDispatcher.dispose();
+        synchronized (this) {
+            if (nodeIndex != null) {
+                nodeIndex.dispose();
+                nodeIndex = null;
+            }
+        }
+        callbackObjectMap.clear();
+        binaryChannel.clear();
+        dataStore.clear();
+        hostUtilities = null;
+        utilities.clear();
+        callbacks = null;
+    }
+
+    /**
+     * @return true once {@code dispose} has been called
+     */
+    public boolean isDisposed() {
+        return disposed;
+    }
+
+    /**
+     * Disposes this instance when the host stops the application, e.g. when
+     * the page is left, so that nothing it registered, such as its metrics
+     * MXBean, outlives it in a long-lived JVM.
+     */
+    @Override
+    public void stop() {
+        dispose();
+    }
+
+    /**
+     * Returns the scheduler queuing work for the JavaFX Platform thread,
+     * shared by all instances.
+     *
+     * @return the scheduler
+     */
+    public FXScheduler getScheduler() {
+        return FXScheduler.getDefault();
+    }
+
+    /**
+     * Returns the channel through which the host passes bulk binary data.
+     *
+     * @return the channel
+     */
+    public BinaryChannel getBinaryChannel() {
+        return binaryChannel;
+    }
+
+    /**
+     * @return true if callbacks receive a {@code DataDelta} rather than the
+     * data string
+     */
+    public boolean isDeltaDelivery() {
+        return deltaDelivery;
+    }
+
+    /**
+     * Enables or disables delta delivery.
+     *
+     * When enabled, the fourth argument of each callback is a
+     * {@code DataDelta} holding only the keys of the data store changed since
+     * the previous call of that callback, rather than the whole data string.
+     * The first call of each callback after the controller is initialised
+     * receives every key.
+     *
+     * @param deltaDelivery true to enable
+     */
+    public void setDeltaDelivery(boolean deltaDelivery) {
+        this.deltaDelivery = deltaDelivery;
     }
 
 //    public String getAppName() {
 //        return appName;
 //    }
+    /**
+     * Returns the JavaScript context of the host page.
+     *
+     * This is the web context of the host services unless a context has been
+     * set with {@code setHostContext}.
+     *
+     * @return the host context, or null if there is none
+     */
     public JSObject getHostContext() {
-        return getHostServices().getWebContext();
+        JSObject context = hostContext;
+        return context != null ? context : getHostServices().getWebContext();
+    }
+
+    /**
+     * Sets the host context to use in place of the web context of the host
+     * services, such as a {@code FakeJSObject} when running headless.
+     *
+     * Set this before the controller is initialised.
+     *
+     * @param hostContext the host context, or null to use the web context
+     */
+    public void setHostContext(JSObject hostContext) {
+        this.hostContext = hostContext;
     }
 
     public FXWebAppControllerInterface getController() {
@@ -954,14 +1727,32 @@ public class FXWebApp extends Application {
     /**
      * Runs supplied callback will on the Platform thread.
      *
+     * The callback is queued in the {@code LIFECYCLE} lane of the
+     * {@code FXScheduler}.
+     *
      * @param callback the code to run
      * @param data a data object to be passed to the callback as input
      */
     public static void runFX(JSObject callback, JSObject data) {
+        runFX(callback, data, null);
+    }
+
+    /**
+     * Runs supplied callback will on the Platform thread, replacing any
+     * callback queued with the same key that has not yet run, e.g.:<br>
+     * {@code app.runFX(function(args)}{ {@code redraw(args);} },
+     * {@code [series], "redraw");}<br>
+     * Only the latest of a burst of such calls then runs.
+     *
+     * @param callback the code to run
+     * @param data a data object to be passed to the callback as input
+     * @param key the key, or null
+     */
+    public static void runFX(JSObject callback, JSObject data, String key) {
         Object[] args = new Object[2];
         args[0] = null;
         args[1] = data;
-        Platform.runLater(() -> {
+        FXScheduler.getDefault().post(FXScheduler.Priority.LIFECYCLE, key, () -> {
             callback.call("call", args);
         });
     }
@@ -983,7 +1774,8 @@ public class FXWebApp extends Application {
     /**
      * Used here to simulate a Platform.runAndWait which JavaFX Platform does
      * not provide. The supplied callback will run on the Platform thread, and
-     * the method will block until the callback has completed.
+     * the method will block until the callback has completed. If called on
+     * the Platform thread, the callback is run inline.
      *
      * @param callback the code to run
      * @param data a data object to be passed to the callback as input
@@ -995,10 +1787,20 @@ public class FXWebApp extends Application {
         Object[] args = new Object[2];
         args[0] = null;
         args[1] = data;
+        if (Platform.isFxApplicationThread()) {
+            // Waiting on the Platform thread for itself would never return
+            try {
+                return callback.call("call", args);
+            } catch (RuntimeException ex) {
+                throw new ExecutionException(ex);
+            }
+        }
         FutureTask<Object> future = new FutureTask(() -> {
             return callback.call("call", args);
         });
-        Platform.runLater(future);
+        FXScheduler.getDefault().post(FXScheduler.Priority.LIFECYCLE, null, future, () -> {
+            future.cancel(false);
+        });
         return future.get();
     }
 
@@ -1023,14 +1825,16 @@ public class FXWebApp extends Application {
      * @throws ExecutionException if a an exception occurs during execution
      */
     public static FutureTask<Object> runAndGoFX(JSObject callback) throws InterruptedException, ExecutionException {
-        Object[] args = new Object[1];
+        Object[] args = new Object[2];
         args[0] = null;
         final FutureTask<Object> future = new FutureTask(() -> {
             return callback.call("call", args);
         });
-        Platform.runLater(() -> {
+        FXScheduler.getDefault().post(FXScheduler.Priority.LIFECYCLE, null, () -> {
             args[1] = future;
             future.run();
+        }, () -> {
+            future.cancel(false);
         });
         return future;
     }
@@ -1063,28 +1867,190 @@ public class FXWebApp extends Application {
         final FutureTask<Object> future = new FutureTask(() -> {
             return callback.call("call", args);
         });
-        Platform.runLater(() -> {
+        FXScheduler.getDefault().post(FXScheduler.Priority.LIFECYCLE, null, () -> {
             args[2] = future;
             future.run();
+        }, () -> {
+            future.cancel(false);
         });
         return future;
     }
 
+    /**
+     * Runs a callback on the Platform thread without blocking the caller.
+     *
+     * @param callback the code to run
+     * @return a future completed with the output from the code
+     * @see #runAsyncFX(JSObject, JSObject, long, JSObject)
+     */
+    public static CompletableFuture<Object> runAsyncFX(JSObject callback) {
+        return runAsyncFX(callback, null, 0, null);
+    }
+
+    /**
+     * Runs a callback on the Platform thread without blocking the caller.
+     *
+     * @param callback the code to run
+     * @param data a data object to be passed to the callback as input
+     * @return a future completed with the output from the code
+     * @see #runAsyncFX(JSObject, JSObject, long, JSObject)
+     */
+    public static CompletableFuture<Object> runAsyncFX(JSObject callback, JSObject data) {
+        return runAsyncFX(callback, data, 0, null);
+    }
+
+    /**
+     * Runs a callback on the Platform thread without blocking the caller.
+     *
+     * If called on the Platform thread, the callback is run inline.
+     * Otherwise it is queued and the returned future completes when it has
+     * run. The callback receives the data and the future, which it may use to
+     * check whether it has been cancelled. Cancelling the future, or it
+     * timing out, before the callback starts prevents it from running; a
+     * callback already running is not interrupted.
+     *
+     * @param callback the code to run
+     * @param data a data object to be passed to the callback as input, or
+     * null
+     * @param timeout the time in milliseconds after which the future
+     * completes with a {@code TimeoutException} - 0 for no timeout
+     * @param onComplete a JavaScript function called on the Platform thread
+     * with the output from the code and an error message (null on success),
+     * or null
+     * @return a future completed with the output from the code
+     */
+    public static CompletableFuture<Object> runAsyncFX(JSObject callback, JSObject data, long timeout, JSObject onComplete) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        if (timeout > 0) {
+            ScheduledFuture<?> timer = TIMER.schedule(() -> {
+                future.completeExceptionally(new TimeoutException("Timed out after " + timeout + "ms"));
+            }, timeout, TimeUnit.MILLISECONDS);
+            future.whenComplete((Object result, Throwable error) -> {
+                timer.cancel(false);
+            });
+        }
+        if (onComplete != null) {
+            future.whenComplete((Object result, Throwable error) -> {
+                Object[] args = new Object[]{null, result, error == null ? null : error.toString()};
+                if (Platform.isFxApplicationThread()) {
+                    onComplete.call("call", args);
+                } else {
+                    Platform.runLater(() -> {
+                        onComplete.call("call", args);
+                    });
+                }
+            });
+        }
+        Runnable task = () -> {
+            if (future.isDone()) {
+                // Cancelled or timed out while queued
+                return;
+            }
+            try {
+                future.complete(callback.call("call", new Object[]{null, data, future}));
+            } catch (RuntimeException ex) {
+                future.completeExceptionally(ex);
+            }
+        };
+        if (Platform.isFxApplicationThread()) {
+            task.run();
+        } else {
+            try {
+                FXScheduler.getDefault().post(FXScheduler.Priority.LIFECYCLE, null, task, () -> {
+                    future.completeExceptionally(new RejectedExecutionException("Dropped before running"));
+                });
+            } catch (RejectedExecutionException ex) {
+                future.completeExceptionally(ex);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Returns the index from node id to nodes for the present root.
+     *
+     * The index is built on the Platform thread once the FXML has loaded,
+     * and maintained there as nodes are added, removed or renamed. Called on
+     * the Platform thread, this builds it afresh if the root has since been
+     * replaced. Called on any other thread, it only returns the index last
+     * built, or an empty index if there is none yet, as walking the graph,
+     * and adding listeners to it, off the Platform thread is unsafe.
+     *
+     * @return the index
+     */
+    public NodeIndex getNodeIndex() {
+        if (!Platform.isFxApplicationThread()) {
+            NodeIndex index = nodeIndex;
+            return index == null ? new NodeIndex(null) : index;
+        }
+        synchronized (this) {
+            Pane r = getRoot();
+            if (nodeIndex == null || nodeIndex.getRoot() != r) {
+                if (nodeIndex != null) {
+                    nodeIndex.dispose();
+                }
+                nodeIndex = new NodeIndex(r);
+            }
+            return nodeIndex;
+        }
+    }
+
+    /**
+     * Finds a node below, or at, the root that matches a CSS selector.
+     *
+     * Plain "#id" selectors are resolved through the {@code NodeIndex}.
+     * Other type, id and class selectors are compiled once and cached. Any
+     * remaining selectors are passed to {@code getRoot().lookup}.
+     *
+     * @param s the selector
+     * @return the first matching node, or null
+     */
     public Node lookup(String s) {
-        return getRoot().lookup(s);
+        String id = NodeSelector.plainId(s);
+        if (id != null) {
+            return getNodeIndex().lookup(id);
+        }
+        NodeSelector selector = NodeSelector.compile(s);
+        return selector == null ? getRoot().lookup(s) : selector.lookup(getRoot(), getNodeIndex());
     }
 
+    /**
+     * Finds all nodes below, or at, the root that match a CSS selector.
+     *
+     * Selectors are resolved as for {@code lookup}.
+     *
+     * @param s the selector
+     * @return the matching nodes
+     */
     public Set<Node> lookupAll(String s) {
-        return getRoot().lookupAll(s);
+        String id = NodeSelector.plainId(s);
+        if (id != null) {
+            return new LinkedHashSet<>(getNodeIndex().lookupAll(id));
+        }
+        NodeSelector selector = NodeSelector.compile(s);
+        return selector == null ? getRoot().lookupAll(s) : selector.lookupAll(getRoot(), getNodeIndex());
     }
 
     /**
-     * Returns an ArrayList of {@code FXWebWindow} instances owned by this
-     * {@code FXWebApp} instance.
+     * Returns an ArrayList of the open {@code FXWebWindow} instances owned by
+     * this {@code FXWebApp} instance.
+     *
+     * The list is a snapshot: changes to it do not affect the windows owned.
      *
      * @return the list of ownedWindows
      */
     public ArrayList<FXWebWindow> getOwnedWindows() {
+        return ownedWindows.snapshot();
+    }
+
+    /**
+     * Returns the registry of the {@code FXWebWindow} instances owned by this
+     * {@code FXWebApp} instance, e.g. to hold them weakly:<br>
+     * {@code app.getWindowRegistry().setWeak(true);}
+     *
+     * @return the registry
+     */
+    public WindowRegistry getWindowRegistry() {
         return ownedWindows;
     }
 
@@ -1096,6 +2062,10 @@ public class FXWebApp extends Application {
         this.fxml = fxml;
     }
 
+    void setController(FXWebAppControllerInterface controller) {
+        this.controller = controller;
+    }
+
     void setCallbacks(String callbacks) {
         this.callbacks = callbacks;
     }
@@ -1115,13 +2085,92 @@ public class FXWebApp extends Application {
      * @param callbacks the name of the JavaScript object in the host context
      * containing the callbacks (if any).
      *
+     * If the {@code WindowPool} is enabled and holds a closed window built
+     * from the same FXML, that window is reopened instead.
+     *
      * @return a reference to the created {@code FXWebWindow} instance.
      */
     public FXWebWindow createWindow(String fxml, String data, String callbacks) {
-        FXWebWindow window = new FXWebWindow(this, fxml, data, callbacks);
+        return createWindow(fxml, data, callbacks, false, null);
+    }
+
+    /**
+     * Creates a new JavaFX window external to the host browser page, loading
+     * its FXML on a background thread.
+     *
+     * The window shows a progress indicator until the scene graph is ready.
+     *
+     * @param fxml the FXML describing the required JavaFX scene.
+     * @param data a string containing data (typically as Json) that will be
+     * passed to the callbacks.
+     * @param callbacks the name of the JavaScript object in the host context
+     * containing the callbacks (if any).
+     * @param onload the name of a function in the host context to call when
+     * loading completes (may be null). It receives the window and an error
+     * message (null on success).
+     *
+     * If the {@code WindowPool} is enabled and holds a closed window built
+     * from the same FXML, that window is reopened instead, and the
+     * {@code onload} function called once it is showing.
+     *
+     * @return a reference to the created {@code FXWebWindow} instance.
+     */
+    public FXWebWindow createWindowAsync(String fxml, String data, String callbacks, String onload) {
+        return createWindow(fxml, data, callbacks, true, onload);
+    }
+
+    private FXWebWindow createWindow(String fxml, String data, String callbacks, boolean async, String onload) {
+        FXWebAppEvents.CreateWindow event = FXWebAppEvents.createWindow();
+        FXWebWindow window = reuseWindow(fxml, data, callbacks, onload);
+        boolean pooled = window != null;
+        if (window == null) {
+            window = new FXWebWindow(this, fxml, data, callbacks, async, onload);
+        }
+        if (FXWebAppEvents.ended(event)) {
+            event.length = fxml == null ? 0 : fxml.length();
+            event.async = async;
+            event.pooled = pooled;
+            event.commit();
+        }
         return window;
     }
 
+    private FXWebWindow reuseWindow(String fxml, String data, String callbacks, String onload) {
+        if (!windowPool.isEnabled() || fxml == null) {
+            return null;
+        }
+        FXWebWindow window = windowPool.acquire(fxml);
+        if (window == null) {
+            return null;
+        }
+        if (Platform.isFxApplicationThread()) {
+            window.reopen(data, callbacks, onload);
+        } else {
+            // Called from the host page, so reopen in order with other lifecycle work
+            FXScheduler.getDefault().post(FXScheduler.Priority.LIFECYCLE, () -> {
+                if (isDisposed()) {
+                    window.dispose();
+                } else {
+                    window.reopen(data, callbacks, onload);
+                }
+            });
+        }
+        return window;
+    }
+
+    /**
+     * Returns the pool of closed windows and pre-created stages used by
+     * {@code createWindow}. The pool is disabled by default. Enable it, and
+     * create stages ahead of use, from JavaScript with e.g.:<br>
+     * {@code app.getWindowPool().setEnabled(true);}<br>
+     * {@code app.getWindowPool().prewarm(2);}
+     *
+     * @return the pool
+     */
+    public WindowPool getWindowPool() {
+        return windowPool;
+    }
+
     /**
      * {@code FXWebWindow} subclass of {@code FXWebApp} that provides support
      * for JavaFX scenes outside of the hosting Web document.
@@ -1130,6 +2179,8 @@ public class FXWebApp extends Application {
     public class FXWebWindow extends FXWebApp {
 
         private final FXWebApp owner;
+        private final boolean async;
+        private final String onload;
 
         /**
          * Constructs an {@code FXWebWindow} instances owned by the specified
@@ -1139,18 +2190,62 @@ public class FXWebApp extends Application {
          * @param fxml
          * @param data
          * @param callbacks
+         * @param async true to load the FXML on a background thread
+         * @param onload host context function to notify when loaded, or null
          */
-        FXWebWindow(FXWebApp owner, String fxml, String data, String callbacks) {
+        FXWebWindow(FXWebApp owner, String fxml, String data, String callbacks, boolean async, String onload) {
             this.owner = owner;
+            this.async = async;
+            this.onload = onload;
             setFxml(fxml);
             setData(data);
             setCallbacks(callbacks);
-            owner.getOwnedWindows().add(this);
-            Platform.runLater(() -> {
-                this.start(new Stage());
+            owner.getWindowRegistry().add(this);
+            FXScheduler.getDefault().post(FXScheduler.Priority.LIFECYCLE, () -> {
+                if (isDisposed() || owner.isDisposed()) {
+                    // Disposed, with its owner, before it could start
+                    owner.getWindowRegistry().remove(this);
+                    return;
+                }
+                Stage stage = owner.getWindowPool().takeSpare();
+                this.start(stage == null ? new Stage() : stage);
             });
         }
 
+        /**
+         * Shows a window taken from the pool with new data and callbacks.
+         *
+         * If the window was wired when it closed, its nodes are unwired from
+         * the callbacks object they were wired to and wired again to the one
+         * now named, before {@code onload} is called. A window that was not
+         * wired is left for the host to wire, as for a new window.
+         *
+         * @param data the data string
+         * @param callbacks the name of the host context callbacks object
+         * @param onload host context function to notify when showing, or null
+         */
+        void reopen(String data, String callbacks, String onload) {
+            setData(data);
+            FXWebAppControllerInterface c = getController();
+            boolean wired = c instanceof FXWebAppController && ((FXWebAppController) c).isInitialized();
+            c.dispose();
+            if (wired) {
+                setCallbacks(null);
+                initController(callbacks);
+            } else {
+                setCallbacks(callbacks);
+            }
+            getStage().show();
+            if (onload != null && !onload.isEmpty()) {
+                FXScheduler.getDefault().post(FXScheduler.Priority.LIFECYCLE, () -> {
+                    JSObject context = getHostContext();
+                    if (context != null) {
+                        context.call(onload, new Object[]{this, null});
+                    }
+                });
+            }
+        }
+
         /**
          *
          * @param stage
@@ -1182,31 +2277,48 @@ public class FXWebApp extends Application {
             scene = new Scene(tempRoot);
             stage.setScene(scene);
             stage.setAlwaysOnTop(true);
+            stage.addEventHandler(WindowEvent.WINDOW_SHOWN, (WindowEvent event) -> {
+                owner.getWindowRegistry().add(this);
+            });
+            stage.addEventHandler(WindowEvent.WINDOW_HIDDEN, (WindowEvent event) -> {
+                owner.getWindowRegistry().remove(this);
+                if (!isDisposed() && owner.getWindowPool().isEnabled()) {
+                    owner.getWindowPool().release(this);
+                }
+            });
             stage.show();
 
             String s = this.getFxml();
             if (s != null && !s.isEmpty()) {
                 // Add the default header if one has not been provided
-                if (!s.startsWith("<?xml")) {
-                    s = defaultFxmlHeader.concat(s);
-                }
+                s = withDefaultHeader(s);
                 this.setFxml(s);
-                FXMLLoader loader = new FXMLLoader();
-
-                controller = new FXWebAppController();
-                loader.setController(controller);
+                this.setController(new FXWebAppController());
+                load(scene, async, onload);
+            }
+        }
 
-                InputStream stream = new ByteArrayInputStream(fxml.getBytes());
-                Pane root;
-                try {
-                    root = loader.load(stream);
-                    scene.setRoot(root);
-                    root.requestLayout();
-                    this.setRoot(root);
-                } catch (IOException ex) {
-                    tempRoot.getChildren().add(new Text("FXWebApp.java encountered and error: " + ex.getMessage()));
-                }
+        /**
+         * Also closes the window and removes it from its owner.
+         */
+        @Override
+        void disposeFX() {
+            owner.getWindowRegistry().remove(this);
+            Pane r = getRoot();
+            if (r != null && r.getScene() != null && r.getScene().getWindow() != null) {
+                r.getScene().getWindow().hide();
             }
+            super.disposeFX();
+        }
+
+        /**
+         * Windows are not embedded, so use the host context of the owner.
+         *
+         * @return the owner's host context
+         */
+        @Override
+        public JSObject getHostContext() {
+            return owner.getHostContext();
         }
     }
 
@@ -1215,7 +2327,7 @@ public class FXWebApp extends Application {
      * this instance.
      */
     public void show() {
-        Platform.runLater(() -> {
+        FXScheduler.getDefault().post(FXScheduler.Priority.LIFECYCLE, () -> {
             this.getStage().show();
         });
     }
@@ -1225,7 +2337,7 @@ public class FXWebApp extends Application {
      * this instance.
      */
     public void close() {
-        Platform.runLater(() -> {
+        FXScheduler.getDefault().post(FXScheduler.Priority.LIFECYCLE, () -> {
             this.getStage().close();
         });
     }
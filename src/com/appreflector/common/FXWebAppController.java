@@ -35,18 +35,17 @@
  */
 package com.appreflector.common;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import javafx.application.Platform;
-import javafx.event.ActionEvent;
-import javafx.event.EventHandler;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 import javafx.scene.Node;
 import javafx.scene.Parent;
-import javafx.scene.control.ButtonBase;
-import javafx.scene.control.ComboBox;
-import javafx.scene.control.ListView;
-import javafx.scene.control.Slider;
-import javafx.scene.control.TextField;
-import javafx.scene.input.MouseEvent;
+import netscape.javascript.JSException;
 import netscape.javascript.JSObject;
 
 /**
@@ -56,14 +55,93 @@ import netscape.javascript.JSObject;
  */
 public class FXWebAppController implements FXWebAppControllerInterface {
 
+    /**
+     * Key in {@code Node.getProperties()} of the code removing the listener
+     * installed for coalesced value callbacks.
+     */
+    private static final String COALESCING_LISTENER = "FXWebAppController.coalescingListener";
+
+    /**
+     * Key in {@code Node.getProperties()} marking nodes wired by a
+     * controller, so that only those are unwired.
+     */
+    private static final String WIRED = "FXWebAppController.wired";
+
+    private FXWebApp app;
+
+    /**
+     * The host object defining the callbacks and the names of its own
+     * properties, fetched in a single round trip. The names are null if they
+     * could not be fetched, in which case each name is checked individually.
+     */
+    private JSObject member;
+    private Set<String> callbackNames;
+
+    /**
+     * True if the callback object map was populated from the node ids, in
+     * which case it follows nodes added and removed incrementally.
+     */
+    private boolean populated;
+
+    /**
+     * The number of callbacks being delivered inline on the Platform thread.
+     */
+    private int inline;
+
+    /**
+     * The data store version last delivered to each callback, when delta
+     * delivery is enabled.
+     */
+    private final ConcurrentHashMap<String, Long> deliveredVersions = new ConcurrentHashMap<>();
+
+    /**
+     * Wires and unwires nodes as they are added to or removed from the
+     * graph, when incremental wiring is enabled.
+     */
+    private final NodeIndex.Listener incremental = new NodeIndex.Listener() {
+
+        @Override
+        public void nodeAdded(Node node) {
+            String id = node.getId();
+            if (id == null || id.isEmpty()) {
+                return;
+            }
+            LinkedHashMap<String, Object> map = app.getCallbackObjectMap();
+            if (populated && !map.containsKey(id)) {
+                map.put(id, null);
+            }
+            if (map.containsKey(id)) {
+                wire(app, node, member, map);
+            }
+        }
+
+        @Override
+        public void nodeRemoved(Node node, String id) {
+            unwire(node);
+            if (populated && id != null && app.getNodeIndex().lookupAll(id).isEmpty()) {
+                app.getCallbackObjectMap().remove(id);
+            }
+        }
+    };
+
     /**
      * {@inheritDoc }
      */
     @Override
     public void initialize(FXWebApp app, String callbacks) {
 
+        if (this.app != null) {
+            this.app.getNodeIndex().removeListener(incremental);
+        }
+        this.app = app;
+        deliveredVersions.clear();
+
+        long start = System.nanoTime();
+        FXWebAppEvents.ControllerInitialize event = FXWebAppEvents.controllerInitialize();
         JSObject context = app.getHostContext();
         JSObject member = (JSObject) context.getMember(callbacks);
+        this.member = member;
+        refreshCallbackNames();
 
         // Run through the contents of the reflector$callbacks.js defined
         // callbacks. If this control has a specific callback defined for it,
@@ -74,144 +152,324 @@ public class FXWebAppController implements FXWebAppControllerInterface {
 
         if (map.isEmpty()) {
             findComponents(app, map);
+            populated = true;
         }
 
-        map.keySet().stream().map((s)
-                -> app.getRoot().lookup("#" + s)).forEach((Node node) -> {
-                    if (node != null) {
-                        switch (node.getClass().toString().replace("class ", "")) {
-                            case "javafx.scene.control.Button":
-                            case "javafx.scene.control.CheckBox":
-                            case "javafx.scene.control.ToggleButton":
-                            case "javafx.scene.control.RadioButton":
-                            case "javafx.scene.control.MenuButton":
-                            case "javafx.scene.control.Hyperlink":
-                                if ((Boolean) member.call("hasOwnProperty", node.getId().concat("_callback"))) {
-                                    ((ButtonBase) node).setOnAction((ActionEvent ev) -> {
-                                        // Call the JS callback
-                                        FXCall(member, node.getId().concat("_callback"), node, ev, map.get(node.getId()), app.getData());
-                                    });
-                                } else {
-                                    String str = "";
-                                    switch (node.getClass().toString().replace("class ", "")) {
-                                        case "javafx.scene.control.Button":
-                                            str = "button";
-                                            break;
-                                        case "javafx.scene.control.CheckBox":
-                                            str = "checkbox";
-                                            break;
-                                        case "javafx.scene.control.ToggleButton":
-                                            str = "togglebutton";
-                                            break;
-                                        case "javafx.scene.control.RadioButton":
-                                            str = "radiobutton";
-                                            break;
-                                        case "javafx.scene.control.MenuButton":
-                                            str = "menubutton";
-                                            break;
-                                        case "javafx.scene.control.Hyperlink":
-                                            str = "hyperlink";
-                                    }
-                                    final String callback = str + "$callback";
-                                    ((ButtonBase) node).setOnAction((ActionEvent ev) -> {
-                                        // Call the JS callback
-                                        FXCall(member, callback, node, ev, map.get(node.getId()), app.getData());
-                                    });
-                                }
-                                break;
-                            case "javafx.scene.control.ComboBox":
-                                if ((Boolean) member.call("hasOwnProperty", node.getId().concat("_callback"))) {
-                                    ((ComboBox) node).setOnAction(new EventHandler<ActionEvent>() {
-
-                                        @Override
-                                        public void handle(ActionEvent ev) {
-                                            // Call the JS callback
-                                            FXCall(member, node.getId().concat("_callback"), node, ev, map.get(node.getId()), app.getData());
-                                        }
-                                    });
-                                } else {
-                                    ((ComboBox) node).setOnAction(new EventHandler<ActionEvent>() {
-
-                                        @Override
-                                        public void handle(ActionEvent ev) {
-                                            // Call the JS callback
-                                            FXCall(member, "combobox$callback", node, ev, map.get(node.getId()), app.getData());
-                                        }
-                                    });
-                                }
-                                break;
-                            case "javafx.scene.control.ChoiceBox":
-                                //TODO
-                                break;
-
-                            case "javafx.scene.control.Slider":
-                                if ((Boolean) member.call("hasOwnProperty", node.getId().concat("_callback"))) {
-                                    ((Slider) node).setOnMouseReleased((MouseEvent ev) -> {
-                                        // Call the JS callback
-                                        FXCall(member, node.getId().concat("_callback"), node, ev, map.get(node.getId()), app.getData());
-                                    });
-                                } else {
-                                    ((Slider) node).setOnMouseReleased((MouseEvent ev) -> {
-                                        // Call the JS callback
-                                        FXCall(member, "slider$callback", node, ev, map.get(node.getId()), app.getData());
-                                    });
-                                }
-                                break;
-                            case "javafx.scene.control.TextField":
-                                if ((Boolean) member.call("hasOwnProperty", node.getId().concat("_callback"))) {
-                                    ((TextField) node).setOnAction((ActionEvent ev) -> {
-                                        // Call the JS callback
-                                        FXCall(member, node.getId().concat("_callback"), node, ev, map.get(node.getId()), app.getData());
-                                    });
-                                } else {
-                                    ((TextField) node).setOnAction((ActionEvent ev) -> {
-                                        // Call the JS callback
-                                        FXCall(member, "textfield$callback", node, ev, map.get(node.getId()), app.getData());
-                                    });
-                                }
-                                break;
-                            case "javafx.scene.control.ListView":
-                                if ((Boolean) member.call("hasOwnProperty", node.getId().concat("_callback"))) {
-                                    ((ListView) node).setOnEditCommit(new EventHandler<ActionEvent>() {
-
-                                        @Override
-                                        public void handle(ActionEvent ev) {
-                                            // Call the JS callback
-                                            FXCall(member, node.getId().concat("_callback"), node, ev, map.get(node.getId()), app.getData());
-                                        }
-                                    });
-                                } else {
-                                    ((ListView) node).setOnEditCommit(new EventHandler<ActionEvent>() {
-
-                                        @Override
-                                        public void handle(ActionEvent ev) {
-                                            // Call the JS callback
-                                            FXCall(member, "listview$callback", node, ev, map.get(node.getId()), app.getData());
-                                        }
-                                    });
-                                }
-                                break;
-                            default:
-                        }
-                    }
+        // Nodes sharing an id share its callback, so wire them all
+        NodeIndex index = app.getNodeIndex();
+        long wired = map.keySet().stream().flatMap((String s)
+                -> index.lookupAll(s).stream()).filter((Node node)
+                        -> wire(app, node, member, map)).count();
+
+        if (app.isIncrementalWiring()) {
+            index.addListener(incremental);
+        }
+        app.getAppMetrics().initialized(System.nanoTime() - start, wired);
+        if (FXWebAppEvents.ended(event)) {
+            event.callbacks = callbacks;
+            event.nodes = wired;
+            event.commit();
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * Unwires every node wired by {@code initialize}, and any wired
+     * incrementally since, and releases the host callback object.
+     */
+    @Override
+    public void dispose() {
+        if (app == null) {
+            return;
+        }
+        NodeIndex index = app.getNodeIndex();
+        index.removeListener(incremental);
+        index.getIds().stream().flatMap((String id)
+                -> index.lookupAll(id).stream()).forEach((Node node) -> {
+                    unwire(node);
+                    DispatchPolicy.set(node, null);
                 });
+        deliveredVersions.clear();
+        callbackNames = null;
+        member = null;
+        app = null;
     }
 
     /**
-     * Calls the relevant JavaScript callback from the JavaFX Platform thread.
+     * Installs the listener forwarding events from a node to its JavaScript
+     * callback, using the {@code ControlAdapter} registered for the node's
+     * class. Nodes without an adapter are ignored.
      *
+     * @param app the app
+     * @param node the node
+     * @param member the JSObject defining the callbacks
+     * @param map the callback object map
+     */
+    private boolean wire(FXWebApp app, Node node, JSObject member, LinkedHashMap<String, Object> map) {
+        ControlAdapter adapter = ControlAdapterRegistry.lookup(node.getClass());
+        if (adapter == null) {
+            return false;
+        }
+        final String callback = hasCallback(node.getId().concat("_callback"))
+                ? node.getId().concat("_callback") : adapter.getDefaultCallback();
+
+        Object remover = node.getProperties().remove(COALESCING_LISTENER);
+        if (remover != null) {
+            ((Runnable) remover).run();
+        }
+        if (app.getCoalescingDispatcher().isEnabled()) {
+            ObservableValue<?> property = adapter.getValueProperty(node);
+            if (property != null) {
+                coalesce(app, node, property, member, callback, map);
+                if (adapter.isReplacedByValueCallbacks()) {
+                    adapter.uninstall(node);
+                    node.getProperties().put(WIRED, Boolean.TRUE);
+                    return true;
+                }
+            }
+        }
+        DispatchPolicy policy = DispatchPolicy.from(map.get(node.getId()));
+        if (policy != null) {
+            DispatchPolicy.set(node, policy);
+        }
+        adapter.install(node, (Object ev) -> {
+            // Call the JS callback
+            long raised = System.nanoTime();
+            FXWebAppEvents.CallbackDispatch event = FXWebAppEvents.callbackDispatch();
+            FXCall(raised, event, node, member, callback, node, ev, map.get(node.getId()), data(app, callback));
+        });
+        node.getProperties().put(WIRED, Boolean.TRUE);
+        return true;
+    }
+
+    /**
+     * Removes the listeners installed for a node by {@code wire}.
      *
+     * @param node the node
+     */
+    private void unwire(Node node) {
+        if (node.getProperties().remove(WIRED) == null) {
+            return;
+        }
+        Object remover = node.getProperties().remove(COALESCING_LISTENER);
+        if (remover != null) {
+            ((Runnable) remover).run();
+        }
+        ControlAdapter adapter = ControlAdapterRegistry.lookup(node.getClass());
+        if (adapter != null) {
+            adapter.uninstall(node);
+        }
+    }
+
+    /**
+     * @return true if the controller has been initialised and not since
+     * disposed
+     */
+    boolean isInitialized() {
+        return app != null;
+    }
+
+    /**
+     * Re-reads the names of the callbacks defined by the host callback
+     * object.
+     *
+     * The names are read once, in a single round trip to the host, each time
+     * the controller is initialised. Call this if callbacks are added to or
+     * removed from the host object afterwards and nodes are to be wired
+     * without re-initialising the controller.
+     */
+    public void refreshCallbackNames() {
+        if (member == null) {
+            return;
+        }
+        try {
+            JSObject object = (JSObject) app.getHostContext().getMember("Object");
+            JSObject names = (JSObject) object.call("getOwnPropertyNames", new Object[]{member});
+            String joined = (String) names.call("join", new Object[]{"\n"});
+            callbackNames = joined.isEmpty()
+                    ? new HashSet<>() : new HashSet<>(Arrays.asList(joined.split("\n")));
+        } catch (JSException | ClassCastException ex) {
+            callbackNames = null;
+        }
+    }
+
+    /**
+     * Tests if the host callback object defines the named callback.
+     *
+     * @param name the callback name
+     * @return true if the callback is defined
+     */
+    private boolean hasCallback(String name) {
+        if (callbackNames != null) {
+            return callbackNames.contains(name);
+        }
+        return (Boolean) member.call("hasOwnProperty", name);
+    }
+
+    /**
+     * Calls the relevant JavaScript callback from the JavaFX Platform thread,
+     * through the {@code INPUT} lane of the {@code FXScheduler}.
+     *
+     * If batching is enabled for the app, the call is queued with the
+     * app's {@code BatchDispatcher} instead. Otherwise, if the
+     * {@code DispatchPolicy} of the node, or failing that of the app, is
+     * {@code DIRECT} and this is the Platform thread, the callback is called
+     * inline unless another callback is already being called inline.
+     *
+     * Nothing is called once the app has been disposed, including callbacks
+     * queued beforehand.
+     *
+     * @param raised the {@code System.nanoTime} at which the event was raised
+     * @param event the flight recorder event begun when the event was raised,
+     * or null
+     * @param node the node raising the event
      * @param member the JSObject defined the callbacks
      * @param method the name of the callback to invoke
      * @param args the arguments to pass the callback
      */
-    private void FXCall(JSObject member, String method, Object... args) {
-        Platform.runLater(() -> {
-            member.call(method, args);
+    private void FXCall(long raised, FXWebAppEvents.CallbackDispatch event, Node node, JSObject member,
+            String method, Object... args) {
+        // dispose() releases the app, so hold it for any queued call
+        final FXWebApp app = this.app;
+        if (app == null || app.isDisposed()) {
+            return;
+        }
+        if (app.getBatchDispatcher().isEnabled()) {
+            app.getBatchDispatcher().post(member, method, args, raised, () -> {
+                delivered(app, method, args);
+            });
+            return;
+        }
+        DispatchPolicy policy = DispatchPolicy.of(node);
+        if (policy == null) {
+            policy = app.getDispatchPolicy();
+        }
+        if (policy == DispatchPolicy.DIRECT && inline == 0 && Platform.isFxApplicationThread()) {
+            app.getDispatchLatency(DispatchPolicy.DIRECT).record(System.nanoTime() - raised);
+            inline++;
+            try {
+                call(app, node, member, method, args, raised, event, DispatchPolicy.DIRECT);
+            } finally {
+                inline--;
+            }
+            return;
+        }
+        FXScheduler.getDefault().post(FXScheduler.Priority.INPUT, () -> {
+            if (app.isDisposed()) {
+                return;
+            }
+            app.getDispatchLatency(DispatchPolicy.DEFERRED).record(System.nanoTime() - raised);
+            call(app, node, member, method, args, raised, event, DispatchPolicy.DEFERRED);
         });
 
     }
 
+    /**
+     * Calls a host callback on the Platform thread, recording its metrics and
+     * a {@code CallbackDispatch} flight recorder event.
+     *
+     * @param app the app
+     * @param node the node raising the event
+     * @param member the JSObject defining the callbacks
+     * @param method the name of the callback to invoke
+     * @param args the arguments to pass the callback
+     * @param raised the {@code System.nanoTime} at which the event was raised
+     * @param event the flight recorder event begun when the event was raised,
+     * or null
+     * @param policy the policy under which the callback is delivered
+     */
+    private void call(FXWebApp app, Node node, JSObject member, String method, Object[] args, long raised,
+            FXWebAppEvents.CallbackDispatch event, DispatchPolicy policy) {
+        long called = System.nanoTime();
+        try {
+            member.call(method, args);
+            delivered(app, method, args);
+        } finally {
+            app.getAppMetrics().called(method, raised);
+            if (FXWebAppEvents.ended(event)) {
+                event.callback = method;
+                event.nodeId = node.getId();
+                event.policy = policy.name();
+                event.queueWait = called - raised;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Returns the data to pass a callback: the data string, or if delta
+     * delivery is enabled the changes to the data store since the version
+     * last delivered to the callback.
+     *
+     * @param app the app
+     * @param callback the name of the callback
+     * @return the data
+     */
+    private Object data(FXWebApp app, String callback) {
+        if (!app.isDeltaDelivery()) {
+            return app.getData();
+        }
+        return app.getDataStore().since(deliveredVersions.getOrDefault(callback, 0L));
+    }
+
+    /**
+     * Records that a callback has returned having been passed a delta, so
+     * that its next delta starts from there, and lets the store forget
+     * removals that every callback has now seen. A callback that throws, or
+     * whose call is dropped, is given the same changes again next time.
+     *
+     * @param app the app
+     * @param callback the name of the callback
+     * @param args the arguments passed, with the data fourth
+     */
+    private void delivered(FXWebApp app, String callback, Object[] args) {
+        if (args.length < 4 || !(args[3] instanceof DataDelta)) {
+            return;
+        }
+        deliveredVersions.merge(callback, ((DataDelta) args[3]).getVersion(), Math::max);
+        VersionedDataStore store = app.getDataStore();
+        if (store.getRemovedCount() > 0) {
+            store.prune(deliveredVersions.values().stream().mapToLong(Long::longValue).min().orElse(0L));
+        }
+    }
+
+    /**
+     * Installs a listener that forwards changes of a value property through
+     * the app's {@code CoalescingDispatcher}. A {@code Runnable} that removes
+     * the listener is kept in the node's properties.
+     *
+     * @param app the app
+     * @param node the node owning the property
+     * @param property the value property
+     * @param member the JSObject defining the callbacks
+     * @param callback the name of the callback to invoke
+     * @param map the callback object map
+     */
+    private void coalesce(FXWebApp app, Node node, ObservableValue<?> property, JSObject member,
+            String callback, LinkedHashMap<String, Object> map) {
+        ChangeListener<Object> listener = (ObservableValue<?> observable, Object oldValue, Object newValue) -> {
+            long raised = System.nanoTime();
+            app.getCoalescingDispatcher().post(node, () -> {
+                // Already on the Platform thread, within the pulse
+                if (app.isDisposed()) {
+                    return;
+                }
+                try {
+                    Object[] args = new Object[]{node, property.getValue(), map.get(node.getId()), data(app, callback)};
+                    member.call(callback, args);
+                    delivered(app, callback, args);
+                } finally {
+                    app.getAppMetrics().called(callback, raised);
+                }
+            });
+        };
+        node.getProperties().put(COALESCING_LISTENER, (Runnable) () -> {
+            property.removeListener(listener);
+        });
+        property.addListener(listener);
+    }
+
     private void findComponents(final FXWebApp app, final LinkedHashMap map) {
         Parent root = app.getRoot();
         getDescendants(app, root, map);
@@ -51,4 +51,13 @@ public interface FXWebAppControllerInterface {
      */
     public void initialize(FXWebApp app, String callbacks);
 
+    /**
+     * Removes everything installed by {@code initialize} and releases any
+     * references to the host. Called by {@code FXWebApp.dispose}.
+     *
+     * The default implementation does nothing.
+     */
+    public default void dispose() {
+    }
+
 }
@@ -0,0 +1,297 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.appreflector.common;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events for the {@code FXWebApp} pipeline, so that a
+ * recording shows stalls in loading, wiring and callback delivery alongside
+ * GC and safepoint data.
+ *
+ * <p>
+ * Each event has a threshold, so only slow operations are recorded, and
+ * costs next to nothing when disabled. Events are enabled by default; they
+ * may be configured in a {@code .jfc} file under the names
+ * {@code com.appreflector.*}. The factory methods return null when the
+ * runtime has no {@code jdk.jfr} (Java 8 before 8u262), and callers then skip
+ * the event.
+ * </p>
+ *
+ * @author ML
+ */
+public final class FXWebAppEvents {
+
+    /**
+     * True if the runtime supports JFR events.
+     */
+    static final boolean AVAILABLE;
+
+    static {
+        boolean available;
+        try {
+            Class.forName("jdk.jfr.Event");
+            available = true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            available = false;
+        }
+        AVAILABLE = available;
+    }
+
+    private FXWebAppEvents() {
+    }
+
+    /**
+     * Building a scene graph from FXML, whether by a compiled builder, a
+     * cached template or parsing.
+     */
+    @Name("com.appreflector.FXMLParse")
+    @Label("FXML Parse")
+    @Category({"AppReflector", "FXWebApp"})
+    @Description("Building a scene graph from FXML")
+    @Threshold("1 ms")
+    public static final class FXMLParse extends Event {
+
+        @Label("FXML Length")
+        int length;
+
+        @Label("Compiled Builder")
+        @Description("True if a builder generated by the FXMLCompiler was used")
+        boolean builder;
+
+        @Label("Failed")
+        @Description("True if the FXML could not be loaded")
+        boolean failed;
+    }
+
+    /**
+     * Adding the default header to short-form FXML.
+     */
+    @Name("com.appreflector.HeaderSynthesis")
+    @Label("FXML Header Synthesis")
+    @Category({"AppReflector", "FXWebApp"})
+    @Description("Adding the default header to short-form FXML")
+    @Threshold("100 us")
+    @StackTrace(false)
+    public static final class HeaderSynthesis extends Event {
+
+        @Label("FXML Length")
+        int length;
+
+        @Label("Header Added")
+        boolean added;
+    }
+
+    /**
+     * Wiring a scene graph to its host callbacks in
+     * {@code FXWebAppController.initialize}.
+     */
+    @Name("com.appreflector.ControllerInitialize")
+    @Label("Controller Initialize")
+    @Category({"AppReflector", "FXWebApp"})
+    @Description("Wiring a scene graph to its host callbacks")
+    @Threshold("1 ms")
+    public static final class ControllerInitialize extends Event {
+
+        @Label("Callbacks")
+        String callbacks;
+
+        @Label("Nodes Wired")
+        long nodes;
+    }
+
+    /**
+     * Calling a host callback for an event. The duration runs from the event
+     * being raised to the callback returning, so a callback that waited long
+     * to be called is recorded however quickly it ran; the part of that spent
+     * waiting is a field.
+     */
+    @Name("com.appreflector.CallbackDispatch")
+    @Label("Callback Dispatch")
+    @Category({"AppReflector", "FXWebApp"})
+    @Description("Raising an event and calling its host callback")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    public static final class CallbackDispatch extends Event {
+
+        @Label("Callback")
+        String callback;
+
+        @Label("Node Id")
+        String nodeId;
+
+        @Label("Dispatch Policy")
+        String policy;
+
+        @Label("Queue Wait")
+        @Description("Time from the event being raised to the call")
+        @Timespan(Timespan.NANOSECONDS)
+        long queueWait;
+    }
+
+    /**
+     * Creating, or reopening from the pool, an {@code FXWebWindow}.
+     */
+    @Name("com.appreflector.CreateWindow")
+    @Label("Create Window")
+    @Category({"AppReflector", "FXWebApp"})
+    @Description("Creating or reopening a window")
+    @Threshold("5 ms")
+    public static final class CreateWindow extends Event {
+
+        @Label("FXML Length")
+        int length;
+
+        @Label("Asynchronous")
+        boolean async;
+
+        @Label("Pooled")
+        @Description("True if a closed window was reopened")
+        boolean pooled;
+    }
+
+    /**
+     * Setting the data string of an app.
+     */
+    @Name("com.appreflector.SetData")
+    @Label("Set Data")
+    @Category({"AppReflector", "FXWebApp"})
+    @Description("Setting the data string of an app")
+    @Threshold("1 ms")
+    public static final class SetData extends Event {
+
+        @Label("Data Length")
+        int length;
+
+        @Label("Version")
+        long version;
+    }
+
+    /**
+     * Ends an event, so that its threshold is checked against the time
+     * since it was begun.
+     *
+     * @param event the event, or null
+     * @return true if the event should be committed
+     */
+    static boolean ended(Event event) {
+        if (event == null) {
+            return false;
+        }
+        event.end();
+        return event.shouldCommit();
+    }
+
+    /**
+     * @return a started event, or null if JFR is not available
+     */
+    static FXMLParse fxmlParse() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        FXMLParse event = new FXMLParse();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @return a started event, or null if JFR is not available
+     */
+    static HeaderSynthesis headerSynthesis() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        HeaderSynthesis event = new HeaderSynthesis();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @return a started event, or null if JFR is not available
+     */
+    static ControllerInitialize controllerInitialize() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        ControllerInitialize event = new ControllerInitialize();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @return a started event, or null if JFR is not available
+     */
+    static CallbackDispatch callbackDispatch() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        CallbackDispatch event = new CallbackDispatch();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @return a started event, or null if JFR is not available
+     */
+    static CreateWindow createWindow() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        CreateWindow event = new CreateWindow();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @return a started event, or null if JFR is not available
+     */
+    static SetData setData() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        SetData event = new SetData();
+        event.begin();
+        return event;
+    }
+}
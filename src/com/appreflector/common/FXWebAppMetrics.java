@@ -0,0 +1,296 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.appreflector.common;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms for an {@code FXWebApp}: FXML load time,
+ * controller wiring, event to callback latency, queue wait and calls of
+ * each host callback.
+ *
+ * <p>
+ * Recording is lock free and cheap enough to leave on. {@code getMetrics}
+ * takes a flat snapshot for the host page; the same figures are published
+ * through JMX while the app is running, as an {@code FXWebAppMetricsMXBean}.
+ * </p>
+ *
+ * @author ML
+ */
+public final class FXWebAppMetrics implements FXWebAppMetricsMXBean {
+
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    private final LatencyHistogram queueWait;
+    private final LatencyHistogram loadTime = new LatencyHistogram();
+    private final LatencyHistogram initializeTime = new LatencyHistogram();
+    private final LatencyHistogram callLatency = new LatencyHistogram();
+    private final Map<String, LongAdder> callbackCounts = new ConcurrentHashMap<>();
+    private final LongAdder loadFailures = new LongAdder();
+    private volatile long wiredNodes;
+    private ObjectName name;
+
+    /**
+     * Holds only histograms and counters, never the app, so that publishing
+     * through JMX does not keep the app and its scene graph reachable.
+     *
+     * @param queueWait the app's {@code DEFERRED} dispatch latency histogram
+     */
+    FXWebAppMetrics(LatencyHistogram queueWait) {
+        this.queueWait = queueWait;
+    }
+
+    /**
+     * Records an FXML load.
+     *
+     * @param nanos the load time
+     * @param failed true if the load failed
+     */
+    void loaded(long nanos, boolean failed) {
+        loadTime.record(nanos);
+        if (failed) {
+            loadFailures.increment();
+        }
+    }
+
+    /**
+     * Records an {@code initialize} of the controller.
+     *
+     * @param nanos the time taken
+     * @param nodes the number of nodes wired
+     */
+    void initialized(long nanos, long nodes) {
+        initializeTime.record(nanos);
+        wiredNodes = nodes;
+    }
+
+    /**
+     * Records the return of a host callback.
+     *
+     * @param callback the callback name
+     * @param raised the {@code System.nanoTime} at which the event handler
+     * was entered
+     */
+    void called(String callback, long raised) {
+        callLatency.record(System.nanoTime() - raised);
+        LongAdder count = callbackCounts.get(callback);
+        if (count == null) {
+            count = callbackCounts.computeIfAbsent(callback, (String key) -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * @return the FXML load time histogram
+     */
+    public LatencyHistogram getLoadTimeHistogram() {
+        return loadTime;
+    }
+
+    /**
+     * @return the histogram of the time to wire the scene graph
+     */
+    public LatencyHistogram getInitializeTimeHistogram() {
+        return initializeTime;
+    }
+
+    /**
+     * @return the histogram of the latency from event handler entry to the
+     * host callback returning
+     */
+    public LatencyHistogram getCallLatencyHistogram() {
+        return callLatency;
+    }
+
+    /**
+     * Returns the histogram of the time from an event to its deferred
+     * callback starting on the Platform thread. This is the app's
+     * {@code DEFERRED} dispatch latency.
+     *
+     * @return the queue wait histogram
+     */
+    public LatencyHistogram getQueueWaitHistogram() {
+        return queueWait;
+    }
+
+    /**
+     * @return the number of failed FXML loads
+     */
+    public long getLoadFailures() {
+        return loadFailures.sum();
+    }
+
+    @Override
+    public Map<String, Double> getLoadTime() {
+        return summary(loadTime);
+    }
+
+    @Override
+    public Map<String, Double> getInitializeTime() {
+        return summary(initializeTime);
+    }
+
+    @Override
+    public long getWiredNodes() {
+        return wiredNodes;
+    }
+
+    @Override
+    public Map<String, Double> getCallLatency() {
+        return summary(callLatency);
+    }
+
+    @Override
+    public Map<String, Double> getQueueWait() {
+        return summary(getQueueWaitHistogram());
+    }
+
+    @Override
+    public Map<String, Long> getCallbackCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        callbackCounts.forEach((String callback, LongAdder count) -> {
+            counts.put(callback, count.sum());
+        });
+        return counts;
+    }
+
+    @Override
+    public void reset() {
+        loadTime.reset();
+        initializeTime.reset();
+        callLatency.reset();
+        callbackCounts.clear();
+        loadFailures.reset();
+        getQueueWaitHistogram().reset();
+    }
+
+    /**
+     * Returns a snapshot of the metrics, keyed by dotted names such as
+     * "load.p99" and "callback.button$callback", in insertion order.
+     * Latencies are in microseconds. The wait times of the lanes of the
+     * default {@code FXScheduler}, which every app shares, are included as
+     * "lane.INPUT.wait.p99" and so on.
+     *
+     * @return the snapshot
+     */
+    public LinkedHashMap<String, Object> getMetrics() {
+        LinkedHashMap<String, Object> metrics = new LinkedHashMap<>();
+        put(metrics, "load", loadTime);
+        metrics.put("load.failures", getLoadFailures());
+        put(metrics, "initialize", initializeTime);
+        metrics.put("initialize.nodes", wiredNodes);
+        put(metrics, "call", callLatency);
+        put(metrics, "queueWait", getQueueWaitHistogram());
+        for (FXScheduler.Priority priority : FXScheduler.Priority.values()) {
+            FXScheduler.Lane lane = FXScheduler.getDefault().getLane(priority);
+            put(metrics, "lane." + priority + ".wait", lane.getWaitTime());
+            metrics.put("lane." + priority + ".depth", lane.getDepth());
+        }
+        getCallbackCounts().forEach((String callback, Long count) -> {
+            metrics.put("callback." + callback, count);
+        });
+        return metrics;
+    }
+
+    private static void put(Map<String, Object> metrics, String prefix, LatencyHistogram histogram) {
+        summary(histogram).forEach((String key, Double value) -> {
+            metrics.put(prefix + "." + key, key.equals("count") ? (Object) value.longValue() : value);
+        });
+    }
+
+    private static Map<String, Double> summary(LatencyHistogram histogram) {
+        Map<String, Double> summary = new LinkedHashMap<>();
+        summary.put("count", (double) histogram.getCount());
+        summary.put("mean", histogram.getMean());
+        summary.put("p50", histogram.getPercentile(50));
+        summary.put("p90", histogram.getPercentile(90));
+        summary.put("p99", histogram.getPercentile(99));
+        summary.put("max", histogram.getMax());
+        return summary;
+    }
+
+    /**
+     * Publishes these metrics through the platform MBean server, if not
+     * already published. Failure to publish, such as in a sandbox, is
+     * ignored.
+     */
+    synchronized void register() {
+        if (name != null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName n = new ObjectName("com.appreflector.common:type=FXWebApp,name="
+                    + INSTANCES.incrementAndGet());
+            server.registerMBean(this, n);
+            name = n;
+        } catch (JMException | SecurityException ex) {
+            name = null;
+        }
+    }
+
+    /**
+     * Withdraws these metrics from the platform MBean server.
+     */
+    synchronized void unregister() {
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException | SecurityException ex) {
+            // Already withdrawn
+        }
+        name = null;
+    }
+
+    /**
+     * @return the JMX name, or null if not published
+     */
+    public synchronized ObjectName getObjectName() {
+        return name;
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.appreflector.common;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@code FXWebAppMetrics}, published through JMX
+ * under {@code com.appreflector.common:type=FXWebApp,name=<n>}.
+ *
+ * <p>
+ * Latencies are maps of count, mean, p50, p90, p99 and max, in
+ * microseconds.
+ * </p>
+ *
+ * @author ML
+ */
+public interface FXWebAppMetricsMXBean {
+
+    /**
+     * @return the FXML load time
+     */
+    Map<String, Double> getLoadTime();
+
+    /**
+     * @return the time to wire the scene graph in {@code initialize}
+     */
+    Map<String, Double> getInitializeTime();
+
+    /**
+     * @return the number of nodes wired by the last {@code initialize}
+     */
+    long getWiredNodes();
+
+    /**
+     * @return the latency from an event handler being entered to the host
+     * callback returning
+     */
+    Map<String, Double> getCallLatency();
+
+    /**
+     * @return the time deferred callbacks wait to run on the Platform thread
+     */
+    Map<String, Double> getQueueWait();
+
+    /**
+     * @return the number of calls of each host callback
+     */
+    Map<String, Long> getCallbackCounts();
+
+    /**
+     * Clears the metrics.
+     */
+    void reset();
+}
@@ -0,0 +1,371 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.appreflector.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import netscape.javascript.JSObject;
+
+/**
+ * An in-process stand-in for JavaScript objects of the host page, for running
+ * {@code FXWebApp} headless.
+ *
+ * <p>
+ * Members are held in a map. Calls are answered by a {@code Handler}
+ * scripted for the method name if there is one. Otherwise calls of
+ * {@code Object.getOwnPropertyNames}, {@code Array.join} and
+ * {@code hasOwnProperty} are answered as a browser would, so the default
+ * controller can inspect a fake callbacks object, and any other call returns
+ * null.
+ * </p>
+ * <p>
+ * Every call other than those answered as a browser would, including
+ * {@code eval}, is counted by method name, and the most recent calls are
+ * recorded up to a limit.
+ * </p>
+ *
+ * @author ML
+ */
+public class FakeJSObject extends JSObject {
+
+    /**
+     * Answers calls of a method.
+     */
+    @FunctionalInterface
+    public interface Handler {
+
+        /**
+         * Called for each call of the method.
+         *
+         * @param target the object called
+         * @param args the arguments
+         * @return the result
+         */
+        Object call(FakeJSObject target, Object[] args);
+    }
+
+    /**
+     * A recorded call.
+     */
+    public static final class Call {
+
+        private final String method;
+        private final Object[] args;
+        private final String thread;
+        private final long time;
+
+        Call(String method, Object[] args) {
+            this.method = method;
+            this.args = args == null ? new Object[0] : args.clone();
+            this.thread = Thread.currentThread().getName();
+            this.time = System.nanoTime();
+        }
+
+        /**
+         * @return the method name
+         */
+        public String getMethod() {
+            return method;
+        }
+
+        /**
+         * @return a copy of the arguments
+         */
+        public Object[] getArgs() {
+            return args.clone();
+        }
+
+        /**
+         * @return the name of the calling thread
+         */
+        public String getThread() {
+            return thread;
+        }
+
+        /**
+         * @return the {@code System.nanoTime} of the call
+         */
+        public long getTime() {
+            return time;
+        }
+
+        @Override
+        public String toString() {
+            return method + Arrays.toString(args) + " on " + thread;
+        }
+    }
+
+    private final Map<String, Object> members = new ConcurrentHashMap<>();
+    private final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+    private final AtomicLong callCount = new AtomicLong();
+    private final ConcurrentLinkedQueue<Call> recorded = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger recordedSize = new AtomicInteger();
+    private volatile int recordLimit = 1000;
+    private volatile int waiters;
+    private final String joined;
+
+    /**
+     * Creates an object with no members.
+     */
+    public FakeJSObject() {
+        this(null);
+    }
+
+    private FakeJSObject(String joined) {
+        this.joined = joined;
+    }
+
+    /**
+     * Creates a host context defining "Object" and a callbacks object whose
+     * members are the given callback names.
+     *
+     * Calls of the callbacks are counted and recorded by the callbacks
+     * object, {@code getMember(callbacks)}.
+     *
+     * @param callbacks the name of the callbacks object
+     * @param names the callback names
+     * @return the context
+     */
+    public static FakeJSObject hostContext(String callbacks, String... names) {
+        FakeJSObject context = new FakeJSObject();
+        FakeJSObject member = new FakeJSObject();
+        for (String name : names) {
+            member.setMember(name, new FakeJSObject());
+        }
+        context.setMember(callbacks, member);
+        context.setMember("Object", new FakeJSObject());
+        return context;
+    }
+
+    /**
+     * Scripts the answer to calls of a method, replacing any earlier handler.
+     *
+     * @param method the method name, or "eval" for {@code eval}
+     * @param handler the handler, or null to remove the handler
+     * @return this object
+     */
+    public FakeJSObject on(String method, Handler handler) {
+        if (handler == null) {
+            handlers.remove(method);
+        } else {
+            handlers.put(method, handler);
+        }
+        return this;
+    }
+
+    /**
+     * @return the number of calls counted
+     */
+    public long getCallCount() {
+        return callCount.get();
+    }
+
+    /**
+     * @param method the method name
+     * @return the number of calls of the method counted
+     */
+    public long getCallCount(String method) {
+        LongAdder count = counts.get(method);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * Returns the most recent calls, oldest first.
+     *
+     * @return a snapshot of the recorded calls
+     */
+    public List<Call> getCalls() {
+        return new ArrayList<>(recorded);
+    }
+
+    /**
+     * Clears the recorded calls and counts.
+     */
+    public void clearCalls() {
+        recorded.clear();
+        recordedSize.set(0);
+        counts.clear();
+        callCount.set(0);
+    }
+
+    /**
+     * @return the maximum number of calls recorded
+     */
+    public int getRecordLimit() {
+        return recordLimit;
+    }
+
+    /**
+     * Sets the maximum number of calls recorded. Once reached, the oldest
+     * call is dropped for each new one. Calls are still counted when the
+     * limit is 0.
+     *
+     * @param recordLimit the limit, 0 or more
+     */
+    public void setRecordLimit(int recordLimit) {
+        if (recordLimit < 0) {
+            throw new IllegalArgumentException("recordLimit must not be negative: " + recordLimit);
+        }
+        this.recordLimit = recordLimit;
+        trim();
+    }
+
+    /**
+     * Waits until at least the given number of calls has been counted.
+     *
+     * @param count the number of calls
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if the count was reached, false if the time elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitCallCount(long count, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            waiters++;
+            try {
+                while (callCount.get() < count) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+                return true;
+            } finally {
+                waiters--;
+            }
+        }
+    }
+
+    private Object record(String method, Object[] args) {
+        counts.computeIfAbsent(method, (String key) -> new LongAdder()).increment();
+        if (recordLimit > 0) {
+            recorded.add(new Call(method, args));
+            recordedSize.incrementAndGet();
+            trim();
+        }
+        callCount.incrementAndGet();
+        if (waiters > 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+        Handler handler = handlers.get(method);
+        return handler == null ? null : handler.call(this, args);
+    }
+
+    private void trim() {
+        while (recordedSize.get() > recordLimit && recorded.poll() != null) {
+            recordedSize.decrementAndGet();
+        }
+    }
+
+    @Override
+    public Object call(String methodName, Object... args) {
+        if (!handlers.containsKey(methodName)) {
+            switch (methodName) {
+                case "getOwnPropertyNames":
+                    if (args.length > 0 && args[0] instanceof FakeJSObject) {
+                        return new FakeJSObject(String.join("\n", ((FakeJSObject) args[0]).members.keySet()));
+                    }
+                    break;
+                case "join":
+                    if (joined != null) {
+                        return joined;
+                    }
+                    break;
+                case "hasOwnProperty":
+                    if (args.length > 0 && args[0] instanceof String) {
+                        return members.containsKey((String) args[0]);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return record(methodName, args);
+    }
+
+    @Override
+    public Object eval(String s) {
+        return record("eval", new Object[]{s});
+    }
+
+    @Override
+    public Object getMember(String name) {
+        return members.get(name);
+    }
+
+    @Override
+    public void setMember(String name, Object value) {
+        if (value == null) {
+            members.remove(name);
+        } else {
+            members.put(name, value);
+        }
+    }
+
+    @Override
+    public void removeMember(String name) {
+        members.remove(name);
+    }
+
+    @Override
+    public Object getSlot(int index) {
+        return members.get(Integer.toString(index));
+    }
+
+    @Override
+    public void setSlot(int index, Object value) {
+        setMember(Integer.toString(index), value);
+    }
+
+    @Override
+    public String toString() {
+        return "FakeJSObject" + members.keySet();
+    }
+}
@@ -0,0 +1,272 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.appreflector.common;
+
+import com.sun.javafx.application.PlatformImpl;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javafx.application.Platform;
+import javafx.stage.Stage;
+import netscape.javascript.JSObject;
+
+/**
+ * Runs {@code FXWebApp} outside a browser, with the host context supplied by
+ * the caller, typically a {@code FakeJSObject}.
+ *
+ * <p>
+ * An app is started from the same named parameters as the host page would
+ * pass (fxml, data, callbacks, w, h, async, onload) and is ready to drive
+ * once {@code launch} returns: its FXML is loaded and, if a callbacks
+ * parameter is given, its controller has been initialised against the host
+ * context.
+ * </p>
+ * <p>
+ * If Monocle is on the class path and no glass platform has been chosen,
+ * the toolkit is started with the headless Monocle platform and software
+ * rendering, so no display is needed. Otherwise a display is needed as
+ * usual.
+ * </p>
+ * <p>
+ * Run from the command line with parameters in the form
+ * {@code --name=value}, and {@code --fxmlFile=path} to read the FXML from a
+ * file, to start an app against a {@code FakeJSObject} host context. The
+ * callbacks it defines are named by {@code --callbackNames=a,b,...}, or
+ * failing that are the {@code <id>_callback} of every id in the FXML.
+ * </p>
+ *
+ * @author ML
+ */
+public final class HeadlessLauncher {
+
+    /**
+     * The Monocle platform factory, present when Monocle is on the class
+     * path.
+     */
+    private static final String MONOCLE = "com.sun.glass.ui.monocle.MonoclePlatformFactory";
+
+    /**
+     * The default time to wait for an app to load.
+     */
+    private static final long TIMEOUT = 30;
+
+    private static volatile boolean started;
+
+    private HeadlessLauncher() {
+    }
+
+    /**
+     * Selects the headless Monocle platform and software rendering, unless
+     * Monocle is absent or a glass platform has already been chosen. This
+     * must be called before the toolkit is started.
+     *
+     * @return true if the headless Monocle platform is selected
+     */
+    public static boolean configure() {
+        if (System.getProperty("glass.platform") != null) {
+            return "Monocle".equals(System.getProperty("glass.platform"))
+                    && "Headless".equals(System.getProperty("monocle.platform"));
+        }
+        try {
+            Class.forName(MONOCLE, false, HeadlessLauncher.class.getClassLoader());
+        } catch (ClassNotFoundException ex) {
+            return false;
+        }
+        System.setProperty("glass.platform", "Monocle");
+        System.setProperty("monocle.platform", "Headless");
+        System.setProperty("prism.order", "sw");
+        if ("1.8".equals(System.getProperty("java.specification.version"))) {
+            // T2K was removed after JavaFX 8
+            System.setProperty("prism.text", "t2k");
+        }
+        System.setProperty("java.awt.headless", "true");
+        return true;
+    }
+
+    /**
+     * Starts the JavaFX toolkit, if it is not already running, after calling
+     * {@code configure}. The toolkit is kept running when no window is
+     * showing.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static synchronized void startToolkit() throws InterruptedException {
+        if (started) {
+            return;
+        }
+        configure();
+        CountDownLatch latch = new CountDownLatch(1);
+        try {
+            PlatformImpl.startup(latch::countDown);
+        } catch (IllegalStateException ex) {
+            // Already started elsewhere
+            latch.countDown();
+        }
+        latch.await();
+        Platform.setImplicitExit(false);
+        started = true;
+    }
+
+    /**
+     * Starts an app with the given parameters and host context, and waits
+     * until it is ready.
+     *
+     * @param parameters the named parameters
+     * @param context the host context
+     * @return the app
+     * @throws InterruptedException if interrupted while waiting
+     * @throws ExecutionException if the app can not be started
+     * @throws TimeoutException if the app is not ready within 30 seconds
+     */
+    public static FXWebApp launch(Map<String, String> parameters, JSObject context)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        return launch(new FXWebApp(), parameters, context);
+    }
+
+    /**
+     * Starts an app instance, such as a subclass of {@code FXWebApp}, with the
+     * given parameters and host context, and waits until it is ready.
+     *
+     * @param <T> the type of the app
+     * @param app the app, not yet started
+     * @param parameters the named parameters
+     * @param context the host context
+     * @return the app
+     * @throws InterruptedException if interrupted while waiting
+     * @throws ExecutionException if the app can not be started
+     * @throws TimeoutException if the app is not ready within 30 seconds
+     */
+    public static <T extends FXWebApp> T launch(T app, Map<String, String> parameters, JSObject context)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        startToolkit();
+        app.setHostContext(context);
+        final Map<String, String> named = new LinkedHashMap<>(parameters);
+        CompletableFuture<Void> start = new CompletableFuture<>();
+        Platform.runLater(() -> {
+            try {
+                app.start(new Stage(), named);
+                start.complete(null);
+            } catch (RuntimeException ex) {
+                start.completeExceptionally(ex);
+            }
+        });
+        start.get(TIMEOUT, TimeUnit.SECONDS);
+        app.whenLoaded().get(TIMEOUT, TimeUnit.SECONDS);
+        if (app.initController()) {
+            awaitController();
+        }
+        return app;
+    }
+
+    /**
+     * Waits for a controller initialisation already posted to the
+     * {@code LIFECYCLE} lane, by waiting behind it.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     * @throws TimeoutException if it does not run within 30 seconds
+     */
+    private static void awaitController() throws InterruptedException, TimeoutException {
+        CountDownLatch latch = new CountDownLatch(1);
+        FXScheduler.getDefault().post(FXScheduler.Priority.LIFECYCLE, latch::countDown);
+        if (!latch.await(TIMEOUT, TimeUnit.SECONDS)) {
+            throw new TimeoutException("Controller not initialised");
+        }
+    }
+
+    /**
+     * Starts an app against a {@code FakeJSObject} host context and reports
+     * the callbacks it makes when the JVM exits.
+     *
+     * @param args the parameters, in the form {@code --name=value}
+     * @throws Exception if the app can not be started
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        for (String arg : args) {
+            int index = arg.indexOf('=');
+            if (arg.startsWith("--") && index > 2) {
+                parameters.put(arg.substring(2, index), arg.substring(index + 1));
+            }
+        }
+        String file = parameters.remove("fxmlFile");
+        if (file != null) {
+            try {
+                parameters.put("fxml", new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8));
+            } catch (IOException ex) {
+                System.err.println("Unable to read " + file + ": " + ex.getMessage());
+                System.exit(1);
+            }
+        }
+        String callbacks = parameters.remove("callbacks");
+        if (callbacks == null) {
+            callbacks = "callbacks";
+        }
+        String names = parameters.remove("callbackNames");
+        FakeJSObject context = FakeJSObject.hostContext(callbacks);
+        final FakeJSObject member = (FakeJSObject) context.getMember(callbacks);
+        // Load first, so that the callbacks can be named after the ids
+        FXWebApp app = launch(parameters, context);
+        if (names != null) {
+            for (String name : names.split(",")) {
+                if (!name.trim().isEmpty()) {
+                    member.setMember(name.trim(), new FakeJSObject());
+                }
+            }
+        } else {
+            for (String id : app.getNodeIndex().getIds()) {
+                member.setMember(id.concat("_callback"), new FakeJSObject());
+            }
+        }
+        if (app.initController(callbacks)) {
+            awaitController();
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println(member.getCallCount() + " callbacks");
+        }));
+        System.out.println("FXWebApp running headless" + (configure() ? " (Monocle)" : "")
+                + ": " + app.getNodeIndex().getIds().size() + " ids, "
+                + app.getAppMetrics().getWiredNodes() + " wired");
+    }
+}
@@ -0,0 +1,250 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.appreflector.common;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The named host utilities of an {@code FXWebApp}.
+ *
+ * <p>
+ * A utility is a {@code HostUtilitiesInterface} implementation, created
+ * lazily, once per app, the first time its name is asked for, e.g. from
+ * JavaScript:<br>
+ * {@code app.getUtilities().register("charts", "org.example.ChartUtilities");}<br>
+ * {@code app.getUtil("charts").plot(series);}<br>
+ * Names that have not been registered are taken to be class names, with
+ * unqualified names in the {@code com.appreflector.common} package. The
+ * class must have a constructor taking the {@code FXWebApp}, which is
+ * preferred, or one taking no arguments.
+ * </p>
+ * <p>
+ * Constructors, and the methods called through {@code invoke}, are resolved
+ * to {@code MethodHandle}s once per class and shared by all apps.
+ * </p>
+ *
+ * @author ML
+ */
+public final class HostUtilityRegistry {
+
+    private static final String DEFAULT_PACKAGE = "com.appreflector.common.";
+
+    /**
+     * Constructors by class name, adapted to take the app.
+     */
+    private static final ConcurrentHashMap<String, MethodHandle> CONSTRUCTORS = new ConcurrentHashMap<>();
+
+    /**
+     * Methods by class name, method name and number of arguments, adapted
+     * to take the receiver and an argument array.
+     */
+    private static final ConcurrentHashMap<String, MethodHandle> METHODS = new ConcurrentHashMap<>();
+
+    private final FXWebApp app;
+    private final ConcurrentHashMap<String, String> classNames = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, HostUtilitiesInterface> instances = new ConcurrentHashMap<>();
+
+    HostUtilityRegistry(FXWebApp app) {
+        this.app = app;
+    }
+
+    /**
+     * Registers a utility class under a name. Any instance already created
+     * under the name is discarded.
+     *
+     * @param name the name
+     * @param className the class name
+     */
+    public void register(String name, String className) {
+        classNames.put(name, className);
+        instances.remove(name);
+    }
+
+    /**
+     * Returns the named utility, creating it on first use.
+     *
+     * The constructor runs outside any lock, so it may itself look up other
+     * utilities. Should two threads create the same utility at once, both
+     * get the one published first.
+     *
+     * @param name the registered name or a class name
+     * @return the utility
+     * @throws IllegalArgumentException if the utility can not be created,
+     * or its constructor throws
+     */
+    public HostUtilitiesInterface get(String name) {
+        HostUtilitiesInterface instance = instances.get(name);
+        if (instance == null) {
+            HostUtilitiesInterface created = create(classNames.getOrDefault(name, name));
+            instance = instances.putIfAbsent(name, created);
+            if (instance == null) {
+                instance = created;
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Tests if a utility has been created.
+     *
+     * @param name the registered name or a class name
+     * @return true if the utility exists
+     */
+    public boolean isCreated(String name) {
+        return instances.containsKey(name);
+    }
+
+    /**
+     * @return the names of the utilities created
+     */
+    public String[] getNames() {
+        return instances.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * Calls a public method of a named utility. Static methods may be called
+     * in this way too. The method is chosen by name and number of arguments.
+     *
+     * @param name the registered name or a class name
+     * @param method the method name
+     * @param args the arguments
+     * @return the result
+     * @throws IllegalArgumentException if there is no such method
+     * @throws Throwable if the method throws
+     */
+    public Object invoke(String name, String method, Object... args) throws Throwable {
+        HostUtilitiesInterface utility = get(name);
+        Class<?> type = utility.getClass();
+        int arity = args == null ? 0 : args.length;
+        MethodHandle handle = METHODS.computeIfAbsent(type.getName() + "#" + method + "/" + arity,
+                (String key) -> resolve(type, method, arity));
+        return handle.invoke(utility, args == null ? new Object[0] : args);
+    }
+
+    /**
+     * Discards the utilities created.
+     */
+    public void clear() {
+        instances.clear();
+    }
+
+    private HostUtilitiesInterface create(String className) {
+        String qualified = className.contains(".") ? className : DEFAULT_PACKAGE.concat(className);
+        MethodHandle constructor = CONSTRUCTORS.get(qualified);
+        if (constructor == null) {
+            // Resolved outside computeIfAbsent, as loading the class runs its initializer
+            constructor = resolve(qualified);
+            CONSTRUCTORS.putIfAbsent(qualified, constructor);
+        }
+        try {
+            return (HostUtilitiesInterface) constructor.invoke(app);
+        } catch (Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new IllegalArgumentException("Can not create " + qualified + ": " + ex, ex);
+        }
+    }
+
+    /**
+     * Resolves the constructor of a utility class to a handle taking the
+     * app and returning the instance.
+     */
+    private static MethodHandle resolve(String className) {
+        Class<?> type;
+        try {
+            type = Class.forName(className);
+        } catch (ClassNotFoundException ex) {
+            throw new IllegalArgumentException("Class not found: " + className);
+        }
+        if (!HostUtilitiesInterface.class.isAssignableFrom(type)) {
+            throw new IllegalArgumentException("Not a valid HostUtilitiesInterface: " + className);
+        }
+        Constructor<?> withApp = null;
+        Constructor<?> noArgs = null;
+        for (Constructor<?> c : type.getDeclaredConstructors()) {
+            if (c.getParameterCount() == 1 && c.getParameterTypes()[0].isAssignableFrom(FXWebApp.class)) {
+                withApp = c;
+            } else if (c.getParameterCount() == 0) {
+                noArgs = c;
+            }
+        }
+        try {
+            MethodType factory = MethodType.methodType(Object.class, FXWebApp.class);
+            if (withApp != null) {
+                withApp.setAccessible(true);
+                return MethodHandles.lookup().unreflectConstructor(withApp).asType(factory);
+            }
+            if (noArgs != null) {
+                noArgs.setAccessible(true);
+                MethodHandle handle = MethodHandles.lookup().unreflectConstructor(noArgs);
+                return MethodHandles.dropArguments(handle, 0, FXWebApp.class).asType(factory);
+            }
+        } catch (IllegalAccessException | SecurityException ex) {
+            throw new IllegalArgumentException("Can not access constructor of " + className + ": " + ex);
+        }
+        throw new IllegalArgumentException("No suitable constructor for " + className);
+    }
+
+    /**
+     * Resolves a public method to a handle taking the receiver and an
+     * argument array.
+     */
+    private static MethodHandle resolve(Class<?> type, String name, int arity) {
+        for (Method m : type.getMethods()) {
+            if (m.getName().equals(name) && m.getParameterCount() == arity) {
+                try {
+                    m.setAccessible(true);
+                    MethodHandle handle = MethodHandles.lookup().unreflect(m);
+                    if (Modifier.isStatic(m.getModifiers())) {
+                        handle = MethodHandles.dropArguments(handle, 0, Object.class);
+                    }
+                    return handle.asSpreader(Object[].class, arity)
+                            .asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+                } catch (IllegalAccessException | SecurityException ex) {
+                    throw new IllegalArgumentException("Can not access " + name + " of " + type.getName() + ": " + ex);
+                }
+            }
+        }
+        throw new IllegalArgumentException("No method " + name + " with " + arity + " arguments on " + type.getName());
+    }
+}
@@ -0,0 +1,255 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.appreflector.common;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javafx.beans.property.ReadOnlyProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.ListChangeListener;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+
+/**
+ * Index from node id to the nodes with that id, for the scene graph below a
+ * root.
+ *
+ * <p>
+ * The index is built in a single traversal of the graph. Listeners on the
+ * children of each {@code Parent}, and on the id of each node, keep it up to
+ * date as nodes are added, removed or renamed. Lookups by id then cost a
+ * single hash lookup instead of a walk of the whole graph, and return every
+ * node sharing an id rather than only the first.
+ * </p>
+ * <p>
+ * The index must be built, and disposed, on the JavaFX Platform thread,
+ * where the graph is modified and the listeners keeping it up to date run.
+ * Lookups may be made from any thread. Nodes sharing an id are returned in
+ * the order they were indexed: document order when the index was built,
+ * followed by nodes added since.
+ * </p>
+ *
+ * @author ML
+ */
+public final class NodeIndex {
+
+    /**
+     * Receives notification of changes to the indexed graph after the index
+     * has been built. Notifications are made on the thread modifying the
+     * graph - normally the JavaFX Platform thread.
+     */
+    public interface Listener {
+
+        /**
+         * Called for each node added to the graph, including each descendant
+         * of an added subtree, and for a node whose id has changed.
+         *
+         * @param node the node
+         */
+        public void nodeAdded(Node node);
+
+        /**
+         * Called for each node removed from the graph, including each
+         * descendant of a removed subtree, and for a node whose id has
+         * changed.
+         *
+         * @param node the node
+         * @param id the id the node had while indexed
+         */
+        public void nodeRemoved(Node node, String id);
+    }
+
+    private final Parent root;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<String, CopyOnWriteArrayList<Node>> index = new ConcurrentHashMap<>();
+
+    private final ListChangeListener<Node> childrenListener = (ListChangeListener.Change<? extends Node> c) -> {
+        while (c.next()) {
+            c.getRemoved().stream().forEach((Node node) -> {
+                detach(node, true);
+            });
+            c.getAddedSubList().stream().forEach((Node node) -> {
+                attach(node, true);
+            });
+        }
+    };
+
+    private final ChangeListener<String> idListener = (ObservableValue<? extends String> observable, String oldValue, String newValue) -> {
+        Node node = (Node) ((ReadOnlyProperty<?>) observable).getBean();
+        remove(oldValue, node);
+        listeners.stream().forEach((Listener l) -> {
+            l.nodeRemoved(node, oldValue);
+        });
+        add(newValue, node);
+        listeners.stream().forEach((Listener l) -> {
+            l.nodeAdded(node);
+        });
+    };
+
+    /**
+     * Creates and populates an index for the graph below, and including, the
+     * root.
+     *
+     * @param root the root, or null for an empty index
+     */
+    NodeIndex(Parent root) {
+        this.root = root;
+        if (root != null) {
+            attach(root, false);
+        }
+    }
+
+    /**
+     * @return the root of the indexed graph
+     */
+    public Parent getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns a node with the specified id.
+     *
+     * @param id the id
+     * @return the node, or null if no node has the id
+     */
+    public Node lookup(String id) {
+        List<Node> nodes = index.get(id);
+        if (nodes != null) {
+            for (Node node : nodes) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns all nodes with the specified id.
+     *
+     * @param id the id
+     * @return an unmodifiable list of the nodes - empty if there are none
+     */
+    public List<Node> lookupAll(String id) {
+        List<Node> nodes = index.get(id);
+        return nodes == null ? Collections.emptyList() : Collections.unmodifiableList(nodes);
+    }
+
+    /**
+     * @return the ids presently in use
+     */
+    public Set<String> getIds() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    /**
+     * Adds a listener notified of nodes added to or removed from the graph.
+     *
+     * @param listener the listener
+     */
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener the listener
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Removes all listeners installed by this index and clears it.
+     */
+    void dispose() {
+        listeners.clear();
+        if (root != null) {
+            detach(root, false);
+        }
+        index.clear();
+    }
+
+    private void attach(Node node, boolean notify) {
+        add(node.getId(), node);
+        node.idProperty().addListener(idListener);
+        if (notify) {
+            listeners.stream().forEach((Listener l) -> {
+                l.nodeAdded(node);
+            });
+        }
+        if (node instanceof Parent) {
+            ((Parent) node).getChildrenUnmodifiable().addListener(childrenListener);
+            ((Parent) node).getChildrenUnmodifiable().stream().forEach((Node child) -> {
+                attach(child, notify);
+            });
+        }
+    }
+
+    private void detach(Node node, boolean notify) {
+        remove(node.getId(), node);
+        node.idProperty().removeListener(idListener);
+        if (notify) {
+            listeners.stream().forEach((Listener l) -> {
+                l.nodeRemoved(node, node.getId());
+            });
+        }
+        if (node instanceof Parent) {
+            ((Parent) node).getChildrenUnmodifiable().removeListener(childrenListener);
+            ((Parent) node).getChildrenUnmodifiable().stream().forEach((Node child) -> {
+                detach(child, notify);
+            });
+        }
+    }
+
+    private void add(String id, Node node) {
+        if (id != null && !id.isEmpty()) {
+            index.computeIfAbsent(id, (String k) -> new CopyOnWriteArrayList<>()).addIfAbsent(node);
+        }
+    }
+
+    private void remove(String id, Node node) {
+        if (id != null && !id.isEmpty()) {
+            index.computeIfPresent(id, (String k, CopyOnWriteArrayList<Node> nodes) -> {
+                nodes.remove(node);
+                return nodes.isEmpty() ? null : nodes;
+            });
+        }
+    }
+}
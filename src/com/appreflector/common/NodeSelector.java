@@ -0,0 +1,266 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.appreflector.common;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+
+/**
+ * A compiled CSS selector used by {@code FXWebApp.lookup} and
+ * {@code lookupAll}.
+ *
+ * <p>
+ * Supports selector groups (",") made of type, id and class selectors
+ * combined with descendant (" ") and child ("&gt;") combinators, which covers
+ * the selectors typically used from JavaScript. Selectors are parsed once and
+ * cached. Where the rightmost part of a selector names an id, candidates are
+ * taken from the {@code NodeIndex} rather than by walking the graph.
+ * </p>
+ * <p>
+ * Selectors using anything else (pseudo-classes, attributes, universal or
+ * sibling selectors) can not be compiled: {@code compile} returns null and
+ * the JavaFX lookup is used instead.
+ * </p>
+ *
+ * @author ML
+ */
+final class NodeSelector {
+
+    private static final int CACHE_SIZE = 64;
+
+    private static final Map<String, NodeSelector> CACHE = new LinkedHashMap<String, NodeSelector>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, NodeSelector> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Marker cached for selectors that can not be compiled.
+     */
+    private static final NodeSelector UNSUPPORTED = new NodeSelector(new ArrayList<>());
+
+    /**
+     * Each alternative of the group is a list of compounds, rightmost first.
+     */
+    private final List<List<Compound>> alternatives;
+
+    private NodeSelector(List<List<Compound>> alternatives) {
+        this.alternatives = alternatives;
+    }
+
+    /**
+     * Returns the compiled form of a selector.
+     *
+     * @param selector the selector
+     * @return the compiled selector, or null if it is not supported
+     */
+    static NodeSelector compile(String selector) {
+        NodeSelector compiled;
+        synchronized (CACHE) {
+            compiled = CACHE.get(selector);
+        }
+        if (compiled == null) {
+            compiled = parse(selector);
+            synchronized (CACHE) {
+                CACHE.put(selector, compiled);
+            }
+        }
+        return compiled == UNSUPPORTED ? null : compiled;
+    }
+
+    /**
+     * Returns the id if the selector is a plain "#id" selector.
+     *
+     * @param selector the selector
+     * @return the id, or null
+     */
+    static String plainId(String selector) {
+        if (selector.length() < 2 || selector.charAt(0) != '#') {
+            return null;
+        }
+        for (int k = 1; k < selector.length(); k++) {
+            if (!isNameChar(selector.charAt(k))) {
+                return null;
+            }
+        }
+        return selector.substring(1);
+    }
+
+    /**
+     * Returns the first node of {@code lookupAll}.
+     *
+     * @param root the root of the graph to search (included in the search)
+     * @param index the index for the graph, or null
+     * @return the node or null
+     */
+    Node lookup(Parent root, NodeIndex index) {
+        Set<Node> all = lookupAll(root, index);
+        return all.isEmpty() ? null : all.iterator().next();
+    }
+
+    /**
+     * Returns all nodes matching the selector, those matching each
+     * alternative of a group in turn. For each alternative, nodes taken from
+     * the index are in index order, and others in document order.
+     *
+     * @param root the root of the graph to search (included in the search)
+     * @param index the index for the graph, or null
+     * @return the nodes
+     */
+    Set<Node> lookupAll(Parent root, NodeIndex index) {
+        Set<Node> result = new LinkedHashSet<>();
+        for (List<Compound> alternative : alternatives) {
+            String id = alternative.get(0).id;
+            if (id != null && index != null && index.getRoot() == root) {
+                index.lookupAll(id).stream().filter((Node node) -> matches(node, alternative, 0, root)).forEach(result::add);
+            } else {
+                collect(root, alternative, root, result);
+            }
+        }
+        return result;
+    }
+
+    private static void collect(Node node, List<Compound> alternative, Parent root, Set<Node> result) {
+        if (matches(node, alternative, 0, root)) {
+            result.add(node);
+        }
+        if (node instanceof Parent) {
+            ((Parent) node).getChildrenUnmodifiable().stream().forEach((Node child) -> {
+                collect(child, alternative, root, result);
+            });
+        }
+    }
+
+    private static boolean matches(Node node, List<Compound> alternative, int k, Parent root) {
+        Compound compound = alternative.get(k);
+        if (!compound.matches(node)) {
+            return false;
+        }
+        if (k == alternative.size() - 1) {
+            return true;
+        }
+        Node parent = node.getParent();
+        if (compound.child) {
+            return parent != null && matches(parent, alternative, k + 1, root);
+        }
+        for (; parent != null; parent = parent.getParent()) {
+            if (matches(parent, alternative, k + 1, root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static NodeSelector parse(String selector) {
+        List<List<Compound>> alternatives = new ArrayList<>();
+        for (String group : selector.split(",")) {
+            List<Compound> compounds = new ArrayList<>();
+            String s = group.trim();
+            if (s.isEmpty()) {
+                return UNSUPPORTED;
+            }
+            int k = 0;
+            boolean child = false;
+            while (k < s.length()) {
+                Compound compound = new Compound();
+                compound.child = child;
+                int start = k;
+                while (k < s.length() && " >".indexOf(s.charAt(k)) < 0) {
+                    char c = s.charAt(k);
+                    int end = k + 1;
+                    while (end < s.length() && isNameChar(s.charAt(end))) {
+                        end++;
+                    }
+                    String name = s.substring(c == '#' || c == '.' ? k + 1 : k, end);
+                    if (name.isEmpty()) {
+                        return UNSUPPORTED;
+                    }
+                    if (c == '#') {
+                        compound.id = name;
+                    } else if (c == '.') {
+                        compound.styleClasses.add(name);
+                    } else if (Character.isJavaIdentifierStart(c) && k == start) {
+                        compound.type = name;
+                    } else {
+                        return UNSUPPORTED;
+                    }
+                    k = end;
+                }
+                compounds.add(0, compound);
+                child = false;
+                while (k < s.length() && " >".indexOf(s.charAt(k)) >= 0) {
+                    child |= s.charAt(k) == '>';
+                    k++;
+                }
+            }
+            alternatives.add(compounds);
+        }
+        return new NodeSelector(alternatives);
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == '$';
+    }
+
+    /**
+     * A compound selector e.g. {@code Button#ok.large}.
+     */
+    private static final class Compound {
+
+        String type;
+        String id;
+        final List<String> styleClasses = new ArrayList<>();
+        /**
+         * True if this compound is preceded by a child combinator, i.e. the
+         * compound to its left must match the parent rather than any
+         * ancestor.
+         */
+        boolean child;
+
+        boolean matches(Node node) {
+            return (type == null || type.equals(node.getTypeSelector()))
+                    && (id == null || id.equals(node.getId()))
+                    && (styleClasses.isEmpty() || node.getStyleClass().containsAll(styleClasses));
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.appreflector.common;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.event.ActionEvent;
+import javafx.scene.Node;
+import javafx.util.Duration;
+import netscape.javascript.JSObject;
+
+/**
+ * A subscription of a host callback to a property of the nodes with an id,
+ * created by {@code FXWebApp.subscribe}.
+ *
+ * <p>
+ * The property is named as in FXML, e.g. "value", "text" or "focused", and
+ * may be a path through read-only properties, e.g.
+ * "selectionModel.selectedItem". Changes are delivered on the JavaFX
+ * Platform thread at most once per minimum interval: a change arriving
+ * within the interval of the previous delivery is held back until the
+ * interval ends, when the latest value is delivered (trailing edge), so the
+ * final value is never lost. The callback, a function in the host context,
+ * receives the node, the new value, the id and the property name.
+ * </p>
+ *
+ * @author ML
+ */
+public final class PropertySubscription {
+
+    private final FXWebApp app;
+    private final String id;
+    private final String property;
+    private final String callback;
+    private final long minInterval;
+    private final List<Runnable> removers = new ArrayList<>();
+    private volatile boolean active = true;
+    private volatile long changes;
+    private volatile long delivered;
+
+    PropertySubscription(FXWebApp app, String id, String property, String callback, long minInterval) {
+        this.app = app;
+        this.id = id;
+        this.property = property;
+        this.callback = callback;
+        this.minInterval = Math.max(0, minInterval);
+    }
+
+    /**
+     * Adds listeners to the property of each node with the id. Must be
+     * called on the Platform thread.
+     *
+     * @throws IllegalArgumentException if a node lacks the property
+     */
+    void install() {
+        if (!active) {
+            // Cancelled while queued
+            return;
+        }
+        for (Node node : app.getNodeIndex().lookupAll(id)) {
+            ObservableValue<?> observable = resolve(node, property);
+            Throttle throttle = new Throttle(node);
+            ChangeListener<Object> listener = (ObservableValue<?> o, Object oldValue, Object newValue) -> {
+                changes++;
+                throttle.changed(o);
+            };
+            observable.addListener(listener);
+            removers.add(() -> {
+                observable.removeListener(listener);
+                throttle.stop();
+            });
+        }
+    }
+
+    /**
+     * Removes the subscription. Changes pending delivery are discarded.
+     */
+    public void cancel() {
+        if (!active) {
+            return;
+        }
+        active = false;
+        if (Platform.isFxApplicationThread()) {
+            remove();
+        } else {
+            FXScheduler.getDefault().post(FXScheduler.Priority.LIFECYCLE, this::remove);
+        }
+        app.removeSubscription(this);
+    }
+
+    private void remove() {
+        removers.stream().forEach((Runnable r) -> {
+            r.run();
+        });
+        removers.clear();
+    }
+
+    /**
+     * @return the node id
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the property name
+     */
+    public String getProperty() {
+        return property;
+    }
+
+    /**
+     * @return the name of the host callback
+     */
+    public String getCallback() {
+        return callback;
+    }
+
+    /**
+     * @return the minimum interval between deliveries in milliseconds
+     */
+    public long getMinInterval() {
+        return minInterval;
+    }
+
+    /**
+     * @return true until cancelled
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * @return the number of changes of the property
+     */
+    public long getChangeCount() {
+        return changes;
+    }
+
+    /**
+     * @return the number of changes delivered to the callback
+     */
+    public long getDeliveredCount() {
+        return delivered;
+    }
+
+    /**
+     * Limits the delivery of changes for one node.
+     */
+    private final class Throttle {
+
+        private final Node node;
+        private PauseTransition timer;
+        private ObservableValue<?> pending;
+        private boolean sent;
+        private long last;
+
+        private Throttle(Node node) {
+            this.node = node;
+        }
+
+        private void changed(ObservableValue<?> observable) {
+            if (!Platform.isFxApplicationThread()) {
+                Platform.runLater(() -> {
+                    changed(observable);
+                });
+                return;
+            }
+            if (pending != null) {
+                return;
+            }
+            // Measured with nanoTime, so that wall clock adjustments can not stall delivery
+            long wait = sent ? TimeUnit.MILLISECONDS.toNanos(minInterval) - (System.nanoTime() - last) : 0;
+            if (wait <= 0) {
+                deliver(observable);
+                return;
+            }
+            pending = observable;
+            if (timer == null) {
+                timer = new PauseTransition();
+                timer.setOnFinished((ActionEvent e) -> {
+                    ObservableValue<?> o = pending;
+                    pending = null;
+                    deliver(o);
+                });
+            }
+            timer.setDuration(Duration.millis(wait / 1e6));
+            timer.playFromStart();
+        }
+
+        private void deliver(ObservableValue<?> observable) {
+            if (!active || observable == null) {
+                return;
+            }
+            last = System.nanoTime();
+            sent = true;
+            delivered++;
+            JSObject context = app.getHostContext();
+            if (context != null) {
+                context.call(callback, new Object[]{node, observable.getValue(), id, property});
+            }
+        }
+
+        private void stop() {
+            if (timer != null) {
+                timer.stop();
+            }
+            pending = null;
+        }
+    }
+
+    /**
+     * Resolves a property path against a node: each segment but the last
+     * names a getter, and the last the {@code ...Property()} method.
+     */
+    private static ObservableValue<?> resolve(Node node, String path) {
+        Object target = node;
+        String[] segments = path.split("\\.");
+        try {
+            for (int i = 0; i < segments.length - 1; i++) {
+                Method getter = FXMLTemplate.findGetter(target.getClass(), segments[i]);
+                if (getter == null) {
+                    throw new IllegalArgumentException("No property " + segments[i] + " on " + target.getClass().getName());
+                }
+                target = getter.invoke(target);
+                if (target == null) {
+                    throw new IllegalArgumentException(segments[i] + " is null on node " + node.getId());
+                }
+            }
+            String name = segments[segments.length - 1];
+            Method accessor = target.getClass().getMethod(name + "Property");
+            Object observable = accessor.invoke(target);
+            if (!(observable instanceof ObservableValue)) {
+                throw new IllegalArgumentException(name + " is not observable on " + target.getClass().getName());
+            }
+            return (ObservableValue<?>) observable;
+        } catch (NoSuchMethodException ex) {
+            throw new IllegalArgumentException("No property " + path + " on " + node.getClass().getName());
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            throw new IllegalArgumentException("Can not read property " + path + ": " + ex);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.appreflector.common;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import javafx.scene.Node;
+import netscape.javascript.JSObject;
+
+/**
+ * Applies many node property changes, sent from the host in one call, in a
+ * single pass on the JavaFX Platform thread.
+ *
+ * <p>
+ * Updates are encoded as a string of lines, one per update, each holding a
+ * node id, a property name and a value separated by tabs:<br>
+ * {@code status\ttext\tReady\nprogress\tprogress\t0.5}<br>
+ * A leading "#" on the id is optional. The update is applied to every node
+ * with the id, through the setter of the property. Values are converted to
+ * the property type as for FXML attributes, so e.g. colours may be given as
+ * "#ff0000" or "red". Within a value, "\n", "\t" and "\\" stand for a
+ * newline, a tab and a backslash, while a value of "\0" stands for null.
+ * The {@code fxdeploy$common.encodeUpdates} helper in fxdeploy-common.js
+ * encodes an array of [id, property, value] triples.
+ * </p>
+ * <p>
+ * The updates are parsed on the calling thread and applied together in one
+ * task in the {@code RENDER} lane of the {@code FXScheduler}, so that they
+ * appear in the same pulse. Updates that can not be applied are counted as
+ * failures and skipped.
+ * </p>
+ *
+ * @author ML
+ */
+public final class SceneUpdater {
+
+    private static final Object NONE = new Object();
+
+    /**
+     * Setters by class and property name - NONE if there is no setter.
+     */
+    private static final ConcurrentHashMap<String, Object> SETTERS = new ConcurrentHashMap<>();
+
+    private static final class Update {
+
+        private final String id;
+        private final String property;
+        private final String value;
+
+        private Update(String id, String property, String value) {
+            this.id = id;
+            this.property = property;
+            this.value = value;
+        }
+    }
+
+    private final FXWebApp app;
+    private final LatencyHistogram applyTime = new LatencyHistogram();
+    private volatile long batches;
+    private volatile long updates;
+    private volatile long failures;
+    private volatile String lastError;
+
+    SceneUpdater(FXWebApp app) {
+        this.app = app;
+    }
+
+    /**
+     * Parses a string of updates and applies them on the Platform thread.
+     *
+     * @param ops the encoded updates
+     * @param onApplied the name of a function in the host context to call
+     * once they have been applied, or null. It receives the app, the number
+     * of updates applied, the number that failed and the time taken to apply
+     * them in microseconds.
+     * @return the number of updates parsed
+     * @throws IllegalArgumentException if an update is malformed, in which
+     * case none are applied
+     */
+    public int apply(String ops, String onApplied) {
+        List<Update> batch = parse(ops);
+        FXScheduler.getDefault().post(FXScheduler.Priority.RENDER, () -> {
+            long start = System.nanoTime();
+            int failed = 0;
+            for (Update update : batch) {
+                if (!apply(update)) {
+                    failed++;
+                }
+            }
+            long nanos = System.nanoTime() - start;
+            applyTime.record(nanos);
+            batches++;
+            updates += batch.size();
+            failures += failed;
+            if (onApplied != null && !onApplied.isEmpty()) {
+                JSObject context = app.getHostContext();
+                if (context != null) {
+                    try {
+                        context.call(onApplied, new Object[]{app, batch.size() - failed, failed, nanos / 1000.0});
+                    } catch (RuntimeException ex) {
+                        lastError = "Can not call " + onApplied + ": " + ex;
+                    }
+                }
+            }
+        });
+        return batch.size();
+    }
+
+    private boolean apply(Update update) {
+        List<Node> nodes = app.getNodeIndex().lookupAll(update.id);
+        if (nodes.isEmpty()) {
+            lastError = "No node with id " + update.id;
+            return false;
+        }
+        boolean applied = true;
+        for (Node node : nodes) {
+            Method setter = setter(node.getClass(), update.property);
+            if (setter == null) {
+                lastError = "No property " + update.property + " on " + node.getClass().getName();
+                applied = false;
+                continue;
+            }
+            try {
+                Object value = update.value == null ? null
+                        : FXMLTemplate.convert(update.value, setter.getParameterTypes()[0]);
+                setter.invoke(node, value);
+            } catch (IllegalAccessException | InvocationTargetException | IllegalArgumentException ex) {
+                lastError = "Can not set " + update.property + " of " + update.id + ": " + ex;
+                applied = false;
+            }
+        }
+        return applied;
+    }
+
+    private static Method setter(Class<?> type, String property) {
+        Object setter = SETTERS.computeIfAbsent(type.getName() + "#" + property, (String key) -> {
+            Method m = FXMLTemplate.findSetter(type, property);
+            return m == null ? NONE : m;
+        });
+        return setter == NONE ? null : (Method) setter;
+    }
+
+    private static List<Update> parse(String ops) {
+        List<Update> batch = new ArrayList<>();
+        if (ops == null) {
+            return batch;
+        }
+        int line = 0;
+        int start = 0;
+        while (start <= ops.length()) {
+            int end = ops.indexOf('\n', start);
+            if (end < 0) {
+                end = ops.length();
+            }
+            line++;
+            if (end > start) {
+                int t1 = ops.indexOf('\t', start);
+                int t2 = t1 < 0 ? -1 : ops.indexOf('\t', t1 + 1);
+                if (t2 < 0 || t2 > end) {
+                    throw new IllegalArgumentException("Malformed update at line " + line);
+                }
+                String id = ops.substring(ops.charAt(start) == '#' ? start + 1 : start, t1);
+                String property = ops.substring(t1 + 1, t2);
+                if (id.isEmpty() || property.isEmpty()) {
+                    throw new IllegalArgumentException("Malformed update at line " + line);
+                }
+                batch.add(new Update(id, property, unescape(ops.substring(t2 + 1, end))));
+            }
+            start = end + 1;
+        }
+        return batch;
+    }
+
+    /**
+     * Reverses the escapes of an encoded value.
+     *
+     * @param value the encoded value
+     * @return the value, or null for "\0"
+     */
+    static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        if (value.equals("\\0")) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char n = value.charAt(++i);
+                sb.append(n == 'n' ? '\n' : n == 't' ? '\t' : n);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the number of batches applied
+     */
+    public long getBatchCount() {
+        return batches;
+    }
+
+    /**
+     * @return the number of updates applied or attempted
+     */
+    public long getUpdateCount() {
+        return updates;
+    }
+
+    /**
+     * @return the number of updates that could not be applied
+     */
+    public long getFailureCount() {
+        return failures;
+    }
+
+    /**
+     * @return the reason the last failed update could not be applied, or
+     * the error thrown by the last {@code onApplied} function to fail, or
+     * null
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * @return the histogram of the time taken to apply each batch
+     */
+    public LatencyHistogram getApplyTime() {
+        return applyTime;
+    }
+}
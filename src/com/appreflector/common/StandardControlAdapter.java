@@ -0,0 +1,200 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package com.appreflector.common;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.event.ActionEvent;
+import javafx.event.Event;
+import javafx.event.EventHandler;
+import javafx.event.EventType;
+import javafx.scene.Node;
+import javafx.scene.control.Button;
+import javafx.scene.control.ButtonBase;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.DatePicker;
+import javafx.scene.control.Hyperlink;
+import javafx.scene.control.ListView;
+import javafx.scene.control.MenuButton;
+import javafx.scene.control.RadioButton;
+import javafx.scene.control.Slider;
+import javafx.scene.control.Spinner;
+import javafx.scene.control.TextField;
+import javafx.scene.control.ToggleButton;
+import javafx.scene.input.MouseEvent;
+
+/**
+ * The {@code ControlAdapter}s for the standard JavaFX controls.
+ *
+ * @author ML
+ */
+final class StandardControlAdapter implements ControlAdapter {
+
+    /**
+     * Key in {@code Node.getProperties()} of listeners installed on value
+     * properties, for controls that do not provide a suitable event.
+     */
+    private static final String LISTENER = "StandardControlAdapter.listener";
+
+    /**
+     * Key in {@code Node.getProperties()} of the event handler installed, so
+     * that only that handler is removed and any installed by the application
+     * are left in place.
+     */
+    private static final String HANDLER = "StandardControlAdapter.handler";
+
+    private final Class<? extends Node> type;
+    private final String callback;
+    private final EventType<? extends Event> eventType;
+    private final Function<Node, ObservableValue<?>> value;
+    private final Function<Node, ObservableValue<?>> changeSource;
+    private final boolean replacedByValueCallbacks;
+
+    /**
+     * @param type the control type
+     * @param name shortened, lower case class name
+     * @param eventType the type of the events forwarded (null if changes to
+     * changeSource are forwarded instead)
+     * @param value returns the value property (may be null)
+     * @param changeSource returns the property whose changes are forwarded
+     * when there is no suitable event
+     * @param replacedByValueCallbacks see {@code ControlAdapter}
+     */
+    StandardControlAdapter(Class<? extends Node> type, String name, EventType<? extends Event> eventType,
+            Function<Node, ObservableValue<?>> value, Function<Node, ObservableValue<?>> changeSource,
+            boolean replacedByValueCallbacks) {
+        this.type = type;
+        this.callback = name == null ? null : name.concat("$callback");
+        this.eventType = eventType;
+        this.value = value;
+        this.changeSource = changeSource;
+        this.replacedByValueCallbacks = replacedByValueCallbacks;
+    }
+
+    @Override
+    public Class<? extends Node> getControlType() {
+        return type;
+    }
+
+    @Override
+    public String getDefaultCallback() {
+        return callback;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void install(Node node, Consumer<Object> forwarder) {
+        uninstall(node);
+        if (eventType != null) {
+            EventHandler<Event> handler = (Event ev) -> {
+                forwarder.accept(ev);
+            };
+            node.getProperties().put(HANDLER, handler);
+            node.addEventHandler((EventType<Event>) eventType, handler);
+        } else {
+            ChangeListener<Object> listener = (ObservableValue<?> observable, Object oldValue, Object newValue) -> {
+                forwarder.accept(newValue);
+            };
+            node.getProperties().put(LISTENER, listener);
+            changeSource.apply(node).addListener(listener);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void uninstall(Node node) {
+        if (eventType != null) {
+            Object handler = node.getProperties().remove(HANDLER);
+            if (handler != null) {
+                node.removeEventHandler((EventType<Event>) eventType, (EventHandler<Event>) handler);
+            }
+        } else {
+            Object listener = node.getProperties().remove(LISTENER);
+            if (listener != null) {
+                changeSource.apply(node).removeListener((ChangeListener<Object>) listener);
+            }
+        }
+    }
+
+    @Override
+    public ObservableValue<?> getValueProperty(Node node) {
+        return value == null ? null : value.apply(node);
+    }
+
+    @Override
+    public boolean isReplacedByValueCallbacks() {
+        return replacedByValueCallbacks;
+    }
+
+    private static StandardControlAdapter onAction(Class<? extends ButtonBase> type, String name) {
+        return new StandardControlAdapter(type, name, ActionEvent.ACTION, null, null, false);
+    }
+
+    /**
+     * @return the standard adapters
+     */
+    @SuppressWarnings("unchecked")
+    static List<ControlAdapter> getAdapters() {
+        return Arrays.asList(
+                onAction(Button.class, "button"),
+                onAction(CheckBox.class, "checkbox"),
+                onAction(ToggleButton.class, "togglebutton"),
+                onAction(RadioButton.class, "radiobutton"),
+                onAction(MenuButton.class, "menubutton"),
+                onAction(Hyperlink.class, "hyperlink"),
+                new StandardControlAdapter(ComboBox.class, "combobox", ActionEvent.ACTION,
+                        (Node node) -> ((ComboBox) node).valueProperty(), null, false),
+                new StandardControlAdapter(ChoiceBox.class, "choicebox", null,
+                        (Node node) -> ((ChoiceBox) node).valueProperty(),
+                        (Node node) -> ((ChoiceBox) node).valueProperty(), true),
+                new StandardControlAdapter(Slider.class, "slider", MouseEvent.MOUSE_RELEASED,
+                        (Node node) -> ((Slider) node).valueProperty(), null, true),
+                new StandardControlAdapter(TextField.class, "textfield", ActionEvent.ACTION,
+                        (Node node) -> ((TextField) node).textProperty(), null, false),
+                new StandardControlAdapter(ListView.class, "listview", ListView.editCommitEvent(), null, null, false),
+                new StandardControlAdapter(Spinner.class, "spinner", null,
+                        (Node node) -> ((Spinner) node).valueProperty(),
+                        (Node node) -> ((Spinner) node).valueProperty(), true),
+                new StandardControlAdapter(DatePicker.class, "datepicker", ActionEvent.ACTION,
+                        (Node node) -> ((DatePicker) node).valueProperty(), null, false));
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.appreflector.common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A keyed data store that versions each change.
+ *
+ * <p>
+ * Every {@code patch} increments the version of the store and records it
+ * against the patched key, so that the keys changed since any earlier version
+ * can be collected as a {@code DataDelta}. When delta delivery is enabled on
+ * an {@code FXWebApp}, callbacks receive such a delta in place of the whole
+ * data string, e.g. from JavaScript:<br>
+ * {@code app.setDeltaDelivery(true);}<br>
+ * {@code app.getDataStore().patch("selection", "row42");}
+ * </p>
+ * <p>
+ * The string set with {@code FXWebApp.setData} is held under the key
+ * {@link #DATA}. Keys are also indexed by the version at which each was last
+ * changed, so a delta costs in proportion to the keys it holds rather than
+ * to the size of the store. A removed key is remembered, so that deltas can
+ * report it, until {@code prune} is told every reader has seen its removal.
+ * All methods are thread safe.
+ * </p>
+ *
+ * @author ML
+ */
+public final class VersionedDataStore {
+
+    /**
+     * The key of the string set with {@code FXWebApp.setData}.
+     */
+    public static final String DATA = "";
+
+    private static final class Entry {
+
+        private final Object value;
+        private final long version;
+        private final boolean removed;
+
+        private Entry(Object value, long version, boolean removed) {
+            this.value = value;
+            this.version = version;
+            this.removed = removed;
+        }
+    }
+
+    private final HashMap<String, Entry> entries = new HashMap<>();
+    private final TreeMap<Long, String> byVersion = new TreeMap<>();
+    private final TreeMap<Long, String> removedByVersion = new TreeMap<>();
+    private long version;
+
+    VersionedDataStore() {
+    }
+
+    /**
+     * Sets the value of a key.
+     *
+     * @param key the key
+     * @param value the value - null removes the key
+     * @return the new version of the store
+     */
+    public synchronized long patch(String key, Object value) {
+        if (key == null) {
+            throw new IllegalArgumentException("key");
+        }
+        Entry previous = entries.put(key, new Entry(value, ++version, value == null));
+        if (previous != null) {
+            byVersion.remove(previous.version);
+            if (previous.removed) {
+                removedByVersion.remove(previous.version);
+            }
+        }
+        byVersion.put(version, key);
+        if (value == null) {
+            removedByVersion.put(version, key);
+        }
+        return version;
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @param key the key
+     * @return the new version of the store
+     */
+    public long remove(String key) {
+        return patch(key, null);
+    }
+
+    /**
+     * Removes every key, keeping the version so that later deltas follow on.
+     */
+    synchronized void clear() {
+        entries.clear();
+        byVersion.clear();
+        removedByVersion.clear();
+    }
+
+    /**
+     * Forgets keys removed at or before a version. Call once every reader
+     * of deltas has been given that version, as none will need to be told
+     * of those removals again.
+     *
+     * @param delivered the least version delivered to any reader
+     */
+    public synchronized void prune(long delivered) {
+        Iterator<Map.Entry<Long, String>> it = removedByVersion.headMap(delivered, true).entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, String> removed = it.next();
+            entries.remove(removed.getValue());
+            byVersion.remove(removed.getKey());
+            it.remove();
+        }
+    }
+
+    /**
+     * @return the number of removed keys still remembered, to be told to
+     * readers of deltas
+     */
+    public synchronized int getRemovedCount() {
+        return removedByVersion.size();
+    }
+
+    /**
+     * @param key the key
+     * @return the value of the key, or null if it has none
+     */
+    public synchronized Object get(String key) {
+        Entry entry = entries.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * @param key the key
+     * @return the version at which the key was last changed, or 0 if never
+     */
+    public synchronized long getVersion(String key) {
+        Entry entry = entries.get(key);
+        return entry == null ? 0 : entry.version;
+    }
+
+    /**
+     * @return the version of the store - the number of changes made to it
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the keys with values
+     */
+    public synchronized String[] getKeys() {
+        ArrayList<String> keys = new ArrayList<>();
+        entries.entrySet().stream().filter((Map.Entry<String, Entry> e)
+                -> !e.getValue().removed).forEach((Map.Entry<String, Entry> e) -> {
+                    keys.add(e.getKey());
+                });
+        return keys.toArray(new String[keys.size()]);
+    }
+
+    /**
+     * Collects the keys changed after a version, with their current values.
+     *
+     * @param since the version - 0 collects every key
+     * @return the delta
+     */
+    public synchronized DataDelta since(long since) {
+        LinkedHashMap<String, Object> changed = new LinkedHashMap<>();
+        ArrayList<String> removed = new ArrayList<>();
+        byVersion.tailMap(since, false).values().stream().forEach((String key) -> {
+            Entry e = entries.get(key);
+            if (e.removed) {
+                if (since > 0) {
+                    removed.add(key);
+                }
+            } else {
+                changed.put(key, e.value);
+            }
+        });
+        return new DataDelta(since, version, changed, removed.toArray(new String[removed.size()]));
+    }
+}
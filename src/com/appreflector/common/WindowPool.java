@@ -0,0 +1,357 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.appreflector.common;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.event.ActionEvent;
+import javafx.stage.Stage;
+import javafx.util.Duration;
+
+/**
+ * A pool of {@code FXWebWindow}s and pre-created {@code Stage}s, making
+ * {@code FXWebApp.createWindow} fast for repeatedly opened windows.
+ *
+ * <p>
+ * When the pool is enabled, a window of an app that is closed after its
+ * FXML has loaded is kept, with its scene graph, rather than discarded. A
+ * later {@code createWindow} for the same FXML - compared by hash - reopens
+ * it with the new data and callbacks instead of building a new window. The
+ * state of its controls is as it was left, so a window that needs to start
+ * afresh should be reset in its {@code onload} function, which is called for
+ * reused windows too. Windows kept longer than the idle timeout, or beyond
+ * the maximum size of the pool, are discarded.
+ * </p>
+ * <p>
+ * {@code prewarm} creates stages ahead of time, in the background lane of
+ * the {@code FXScheduler}, so that new windows need not create their own.
+ * </p>
+ * <p>
+ * {@code createWindow} may be called on any thread. Called from the host
+ * page, off the Platform thread, it takes a window from the pool at once
+ * and reopens it in the {@code LIFECYCLE} lane of the {@code FXScheduler}.
+ * Apart from that, and the configuration and statistics getters and
+ * setters, all methods must be called on the Platform thread.
+ * </p>
+ *
+ * @author ML
+ */
+public final class WindowPool {
+
+    private static final class Idle {
+
+        private final FXWebApp.FXWebWindow window;
+        private final long since;
+
+        private Idle(FXWebApp.FXWebWindow window) {
+            this.window = window;
+            this.since = System.currentTimeMillis();
+        }
+    }
+
+    private final FXWebApp owner;
+    private final HashMap<String, ArrayDeque<Idle>> idle = new HashMap<>();
+    private final ArrayDeque<Stage> spare = new ArrayDeque<>();
+    private PauseTransition sweeper;
+    private volatile int idleCount;
+    private volatile boolean enabled;
+    private volatile int maximumSize = 4;
+    private volatile long idleTimeout = 60000;
+    private volatile long hits;
+    private volatile long misses;
+    private volatile long evictions;
+
+    WindowPool(FXWebApp owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * @return true if closed windows are kept for reuse
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables the reuse of closed windows. Disabling the pool
+     * discards the windows it holds.
+     *
+     * @param enabled true to enable
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            runFX(this::clear);
+        }
+    }
+
+    /**
+     * @return the maximum number of closed windows, and of spare stages, kept
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Sets the maximum number of closed windows, and of spare stages, kept.
+     *
+     * @param maximumSize the maximum size
+     */
+    public void setMaximumSize(int maximumSize) {
+        this.maximumSize = Math.max(0, maximumSize);
+    }
+
+    /**
+     * @return the time in milliseconds after which a closed window is
+     * discarded
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets the time after which a closed window is discarded.
+     *
+     * @param millis the timeout in milliseconds
+     */
+    public void setIdleTimeout(long millis) {
+        this.idleTimeout = Math.max(1, millis);
+    }
+
+    /**
+     * Creates stages for future windows in the background, up to the
+     * maximum size of the pool.
+     *
+     * @param count the number of stages to create
+     */
+    public void prewarm(int count) {
+        for (int i = 0; i < count; i++) {
+            FXScheduler.getDefault().post(FXScheduler.Priority.BACKGROUND, () -> {
+                if (spare.size() < maximumSize) {
+                    spare.add(new Stage());
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the number of closed windows held
+     */
+    public int getIdleCount() {
+        return idleCount;
+    }
+
+    /**
+     * @return the number of pre-created stages held
+     */
+    public int getSpareCount() {
+        return spare.size();
+    }
+
+    /**
+     * @return the number of windows reused
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of windows created while the pool was enabled
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of closed windows discarded
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Discards the closed windows and spare stages held.
+     */
+    public void clear() {
+        ArrayList<FXWebApp.FXWebWindow> discarded = new ArrayList<>();
+        synchronized (this) {
+            idle.values().stream().forEach((ArrayDeque<Idle> windows) -> {
+                windows.stream().forEach((Idle i) -> {
+                    discarded.add(i.window);
+                });
+            });
+            idle.clear();
+            idleCount = 0;
+        }
+        discarded.stream().forEach(this::discard);
+        spare.clear();
+        if (sweeper != null) {
+            sweeper.stop();
+        }
+    }
+
+    /**
+     * Takes a closed window built from the same FXML, if one is held. May be
+     * called on any thread.
+     *
+     * @param fxml the FXML, with or without its header
+     * @return the window or null
+     */
+    synchronized FXWebApp.FXWebWindow acquire(String fxml) {
+        if (!enabled) {
+            return null;
+        }
+        ArrayDeque<Idle> windows = idle.get(key(fxml));
+        Idle i = windows == null ? null : windows.pollLast();
+        if (i == null) {
+            misses++;
+            return null;
+        }
+        idleCount--;
+        hits++;
+        return i.window;
+    }
+
+    /**
+     * @return a pre-created stage, or null
+     */
+    Stage takeSpare() {
+        return spare.poll();
+    }
+
+    /**
+     * Keeps a window that has been closed, if the pool is enabled and has
+     * room, or otherwise discards it.
+     *
+     * @param window the window
+     */
+    void release(FXWebApp.FXWebWindow window) {
+        if (!enabled || !window.isLoaded() || maximumSize == 0) {
+            discard(window);
+            return;
+        }
+        ArrayList<FXWebApp.FXWebWindow> evicted = new ArrayList<>();
+        synchronized (this) {
+            while (idleCount >= maximumSize) {
+                evicted.add(evictOldest());
+            }
+            idle.computeIfAbsent(key(window.getFxml()), (String k) -> new ArrayDeque<>()).add(new Idle(window));
+            idleCount++;
+        }
+        evicted.stream().forEach(this::discard);
+        scheduleSweep();
+    }
+
+    /**
+     * Removes the window held longest, with the lock held.
+     *
+     * @return the window, to be discarded once the lock is released
+     */
+    private FXWebApp.FXWebWindow evictOldest() {
+        Idle oldest = null;
+        ArrayDeque<Idle> from = null;
+        for (ArrayDeque<Idle> windows : idle.values()) {
+            Idle i = windows.peekFirst();
+            if (i != null && (oldest == null || i.since < oldest.since)) {
+                oldest = i;
+                from = windows;
+            }
+        }
+        from.pollFirst();
+        idleCount--;
+        evictions++;
+        return oldest.window;
+    }
+
+    private void sweep() {
+        long cutoff = System.currentTimeMillis() - idleTimeout;
+        ArrayList<FXWebApp.FXWebWindow> expired = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, ArrayDeque<Idle>>> it = idle.entrySet().iterator();
+            while (it.hasNext()) {
+                ArrayDeque<Idle> windows = it.next().getValue();
+                while (!windows.isEmpty() && windows.peekFirst().since <= cutoff) {
+                    expired.add(windows.pollFirst().window);
+                    idleCount--;
+                    evictions++;
+                }
+                if (windows.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+        expired.stream().forEach(this::discard);
+        if (idleCount > 0) {
+            scheduleSweep();
+        }
+    }
+
+    private void scheduleSweep() {
+        if (sweeper == null) {
+            sweeper = new PauseTransition();
+            sweeper.setOnFinished((ActionEvent e) -> {
+                sweep();
+            });
+        }
+        if (sweeper.getStatus() != PauseTransition.Status.RUNNING) {
+            sweeper.setDuration(Duration.millis(idleTimeout));
+            sweeper.playFromStart();
+        }
+    }
+
+    private void discard(FXWebApp.FXWebWindow window) {
+        owner.getWindowRegistry().remove(window);
+        window.dispose();
+    }
+
+    private static String key(String fxml) {
+        return FXMLTemplateCache.hash(FXMLTemplateCache.normalize(FXWebApp.withDefaultHeader(fxml)));
+    }
+
+    private static void runFX(Runnable runnable) {
+        if (Platform.isFxApplicationThread()) {
+            runnable.run();
+        } else {
+            Platform.runLater(runnable);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * <p>
+ * Copyright (c) 2015, Malcolm Lidierth, UK. All rights reserved.
+ *
+ * Modifications for use with Reflector Copyright (c) 2015, AppReflector Ltd,
+ * UK. All rights reserved.
+ * </p>
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.appreflector.common;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code FXWebWindow}s owned by an {@code FXWebApp}.
+ *
+ * <p>
+ * Windows are registered when created or shown and removed when their stage
+ * is hidden, so that closed windows are not retained. The registry may be
+ * read and modified from any thread. Optionally it holds windows weakly, so
+ * that a window no longer referenced elsewhere - e.g. by its showing stage
+ * or the host page - may be collected without being closed first.
+ * </p>
+ *
+ * @author ML
+ */
+public final class WindowRegistry {
+
+    private final class Entry extends WeakReference<FXWebApp.FXWebWindow> {
+
+        private volatile FXWebApp.FXWebWindow strong;
+
+        private Entry(FXWebApp.FXWebWindow window) {
+            super(window, queue);
+            this.strong = weak ? null : window;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<Entry> entries = new ConcurrentLinkedQueue<>();
+    private final ReferenceQueue<FXWebApp.FXWebWindow> queue = new ReferenceQueue<>();
+    private final AtomicLong total = new AtomicLong();
+    private volatile boolean weak;
+
+    WindowRegistry() {
+    }
+
+    /**
+     * Registers a window, unless it is already registered.
+     *
+     * @param window the window
+     * @return true if the window was added
+     */
+    synchronized boolean add(FXWebApp.FXWebWindow window) {
+        purge();
+        if (find(window) != null) {
+            return false;
+        }
+        entries.add(new Entry(window));
+        total.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Removes a window.
+     *
+     * @param window the window
+     * @return true if the window was registered
+     */
+    synchronized boolean remove(FXWebApp.FXWebWindow window) {
+        purge();
+        Entry entry = find(window);
+        if (entry == null) {
+            return false;
+        }
+        entries.remove(entry);
+        entry.clear();
+        return true;
+    }
+
+    /**
+     * @param window the window
+     * @return true if the window is registered
+     */
+    public boolean contains(FXWebApp.FXWebWindow window) {
+        return find(window) != null;
+    }
+
+    /**
+     * @return a snapshot of the registered windows, in the order registered
+     */
+    public ArrayList<FXWebApp.FXWebWindow> snapshot() {
+        ArrayList<FXWebApp.FXWebWindow> windows = new ArrayList<>();
+        entries.stream().forEach((Entry entry) -> {
+            FXWebApp.FXWebWindow window = entry.get();
+            if (window != null) {
+                windows.add(window);
+            }
+        });
+        return windows;
+    }
+
+    /**
+     * @return the number of windows registered and not yet collected
+     */
+    public int getLiveCount() {
+        return snapshot().size();
+    }
+
+    /**
+     * @return the number of windows ever registered, counting a window again
+     * each time it is reopened
+     */
+    public long getTotalCount() {
+        return total.get();
+    }
+
+    /**
+     * @return true if windows are held weakly
+     */
+    public boolean isWeak() {
+        return weak;
+    }
+
+    /**
+     * Sets whether windows, including those already registered, are held
+     * weakly.
+     *
+     * @param weak true to hold windows weakly
+     */
+    public synchronized void setWeak(boolean weak) {
+        this.weak = weak;
+        entries.stream().forEach((Entry entry) -> {
+            entry.strong = weak ? null : entry.get();
+        });
+    }
+
+    private Entry find(FXWebApp.FXWebWindow window) {
+        for (Entry entry : entries) {
+            if (entry.get() == window) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void purge() {
+        Reference<? extends FXWebApp.FXWebWindow> ref;
+        while ((ref = queue.poll()) != null) {
+            entries.remove(ref);
+        }
+    }
+}